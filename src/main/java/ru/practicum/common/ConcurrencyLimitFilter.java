@@ -0,0 +1,106 @@
+package ru.practicum.common;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничение числа одновременно обрабатываемых запросов.
+ * На виртуальных потоках Tomcat не ограничивает число обработчиков пулом потоков, и при наплыве запросов
+ * все они встают в очередь за соединениями с БД. Запросы сверх limit ждут разрешения не дольше acquireTimeout,
+ * затем получают 503 с Retry-After. limit=0 - без ограничения. Запросы к /actuator не ограничиваются.
+ * Асинхронный запрос (потоковый ответ) держит разрешение, пока ответ не будет дописан, а не до выхода из фильтра.
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+    private final long retryAfterSec;
+
+    public ConcurrencyLimitFilter(@Value("${web.max-concurrent-requests:0}") int limit,
+                                  @Value("${web.acquire-timeout-ms:1000}") long acquireTimeoutMs,
+                                  @Value("${web.retry-after-sec:1}") long retryAfterSec) {
+        this.permits = limit > 0 ? new Semaphore(limit) : null;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.retryAfterSec = retryAfterSec;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return permits == null || request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            log.debug("Too many concurrent requests, rejecting {} {}", request.getMethod(), request.getRequestURI());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSec));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // поток обработчика освобождён, но ответ ещё пишется: разрешение вернётся по завершении
+                request.getAsyncContext().addListener(new ReleaseOnComplete());
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    private final class ReleaseOnComplete implements AsyncListener {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // после таймаута контейнер всё равно завершит запрос и вызовет onComplete
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // повторный startAsync заменяет слушателей: регистрируемся заново
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
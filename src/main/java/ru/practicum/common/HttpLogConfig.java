@@ -0,0 +1,40 @@
+package ru.practicum.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.Strategy;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Настройки журнала HTTP-запросов (Logbook): какие запросы записывать и в каком объёме.
+ * Бины заменяют одноимённые бины автоконфигурации Logbook.
+ */
+@Configuration
+public class HttpLogConfig {
+
+    // запросы, не прошедшие условие, Logbook не обрабатывает совсем: ни буферизации, ни записи
+    @Bean
+    public Predicate<HttpRequest> requestCondition(
+            @Value("${http-log.exclude-paths:/actuator/**}") List<String> excludePaths,
+            @Value("${http-log.sample-rate:1.0}") double sampleRate) {
+        return HttpLogStrategy.anyOf(excludePaths).negate().and(sampled(sampleRate));
+    }
+
+    @Bean
+    public Strategy strategy(@Value("${http-log.mode:ACCESS}") HttpLogStrategy.Mode mode,
+                             @Value("${http-log.body-exclude-paths:}") List<String> bodyExcludePaths) {
+        return new HttpLogStrategy(mode, bodyExcludePaths);
+    }
+
+    static Predicate<HttpRequest> sampled(double sampleRate) {
+        if (sampleRate >= 1) {
+            return request -> true;
+        }
+        return request -> ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.common;
+
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Strategy;
+import org.zalando.logbook.core.Conditions;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Что попадает в журнал HTTP-запросов. В режиме ACCESS тела не буферизуются вовсе;
+ * в режиме BODY тела захватываются везде, кроме путей с большими ответами.
+ * Методы записи не переопределены: как принято в Logbook, запрос записывается отдельной записью при поступлении,
+ * ответ - своей записью после ответа, обе с одним correlation id.
+ */
+final class HttpLogStrategy implements Strategy {
+    enum Mode { ACCESS, BODY }
+
+    private final Mode mode;
+    private final Predicate<HttpRequest> withoutBody;
+
+    HttpLogStrategy(Mode mode, Collection<String> bodyExcludePaths) {
+        this.mode = mode;
+        this.withoutBody = anyOf(bodyExcludePaths);
+    }
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        return captureBody(request) ? request.withBody() : request.withoutBody();
+    }
+
+    @Override
+    public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+        return captureBody(request) ? response.withBody() : response.withoutBody();
+    }
+
+    private boolean captureBody(HttpRequest request) {
+        return mode == Mode.BODY && !withoutBody.test(request);
+    }
+
+    static Predicate<HttpRequest> anyOf(Collection<String> paths) {
+        Predicate<HttpRequest> matches = request -> false;
+        for (String path : paths) {
+            matches = matches.or(Conditions.requestTo(path));
+        }
+        return matches;
+    }
+}
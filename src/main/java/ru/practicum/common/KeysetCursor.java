@@ -0,0 +1,31 @@
+package ru.practicum.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Позиция в списке, упорядоченном по (дата, id) по убыванию.
+ * Клиенту отдаётся как непрозрачная строка, следующая страница начинается строго после этой позиции.
+ */
+public record KeysetCursor(Instant date, long id) {
+
+    public String encode() {
+        String raw = date.getEpochSecond() + ":" + date.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Unexpected cursor format");
+            }
+            Instant date = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new KeysetCursor(date, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid page cursor: " + token, e);
+        }
+    }
+}
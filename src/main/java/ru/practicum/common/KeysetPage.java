@@ -0,0 +1,21 @@
+package ru.practicum.common;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * Страница списка и курсор следующей страницы (null, если страница последняя).
+ */
+public record KeysetPage<T>(List<T> content, String nextCursor) {
+    // заголовок ответа, в котором клиенту передаётся курсор следующей страницы
+    public static final String NEXT_CURSOR_HEADER = "X-Later-Next-Cursor";
+
+    public ResponseEntity<List<T>> toResponseEntity() {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(content);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Защита от устаревших чтений с реплики сразу после записи.
+ * Запросы, изменяющие данные, выполняются на основной базе, а пользователь запоминается на staleness;
+ * в течение этого времени его чтения тоже идут на основную базу, пока реплика не догонит запись.
+ * Пользователь определяется по заголовку X-Later-User-Id; запросы без него на реплику не влияют.
+ */
+class ReadYourWritesFilter extends OncePerRequestFilter {
+    private static final String USER_HEADER = "X-Later-User-Id";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Cache<String, Boolean> recentWriters;
+
+    ReadYourWritesFilter(Duration staleness) {
+        this.recentWriters = CacheBuilder.newBuilder()
+                .expireAfterWrite(staleness)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String userId = request.getHeader(USER_HEADER);
+        boolean write = !READ_METHODS.contains(request.getMethod());
+        boolean primaryOnly = write || (userId != null && recentWriters.getIfPresent(userId) != null);
+        ReplicaRoutingDataSource.usePrimary(primaryOnly);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.usePrimary(false);
+            // отсчёт от окончания записи: к этому моменту транзакция зафиксирована на основной базе
+            if (write && userId != null) {
+                recentWriters.put(userId, Boolean.TRUE);
+            }
+        }
+    }
+}
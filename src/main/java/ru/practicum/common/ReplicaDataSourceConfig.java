@@ -0,0 +1,79 @@
+package ru.practicum.common;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение с реплик: включается, когда задан replica.datasource.urls (адреса через запятую).
+ * Основная база настраивается как обычно (spring.datasource.*); реплики - пулы того же размера
+ * с теми же учётными данными, если не заданы replica.datasource.username/password.
+ */
+@Configuration
+@ConditionalOnProperty("replica.datasource.urls")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                      DataSourceProperties properties,
+                                                      @Value("${replica.datasource.urls}") List<String> urls,
+                                                      @Value("${replica.datasource.username:}") String username,
+                                                      @Value("${replica.datasource.password:}") String password,
+                                                      @Value("${replica.max-lag-ms:0}") long maxLagMs) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(i).trim())
+                    .build();
+            if (!username.isEmpty()) {
+                replica.setUsername(username);
+                replica.setPassword(password);
+            }
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(primaryDataSource.getMaximumPoolSize());
+            replica.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, maxLagMs);
+    }
+
+    /**
+     * Соединение берётся при первом запросе к базе, а не в начале транзакции: к этому моменту
+     * известно, readOnly ли транзакция, и можно выбрать реплику.
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${replica.read-your-writes-ms:5000}") long stalenessMs) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(Duration.ofMillis(stalenessMs)));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.practicum.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Выбор базы для соединения: транзакции readOnly идут на реплики (по очереди среди исправных),
+ * всё остальное - на основную базу.
+ * Реплика, которая не отвечает или отстаёт больше чем на maxLagMs, исключается до следующей проверки;
+ * когда исправных реплик нет, чтение идёт на основную базу.
+ * Работает только за {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * тогда соединение берётся при первом запросе, когда признак readOnly транзакции уже установлен.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    static final String PRIMARY = "primary";
+
+    // отставание реплики в миллисекундах. На основной базе (не в режиме восстановления) его нет;
+    // реплика, применившая всё полученное, тоже не отстаёт, хотя при простое основной базы время
+    // последней применённой транзакции уходит в прошлое. Разница времени считается, только пока применение
+    // действительно позади приёма
+    static final String LAG_QUERY = "SELECT CASE "
+            + "WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE coalesce(extract(epoch FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    // чтение должно видеть только что записанное: запрос обслуживается основной базой
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMs) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Replica("replica-" + i, replicas.get(i)))
+                .toList();
+        this.maxLagMs = maxLagMs;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicas.forEach(replica -> targets.put(replica.key, replica.dataSource));
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    static void usePrimary(boolean primaryOnly) {
+        if (primaryOnly) {
+            PRIMARY_ONLY.set(Boolean.TRUE);
+        } else {
+            PRIMARY_ONLY.remove();
+        }
+    }
+
+    /**
+     * Выполняет чтение на основной базе, даже в транзакции readOnly. Нужно там, где прочитанное запоминается:
+     * кэш, заполненный с отстающей реплики, отдавал бы старые данные и после того, как реплика догонит запись.
+     * Соединение должно браться внутри action - уже открытое в транзакции соединение не переключается.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    /**
+     * Потоковый ответ пишется в другом потоке, где признака чтения с основной базы нет:
+     * признак текущего запроса переносится в поток записи ответа.
+     */
+    public static StreamingResponseBody withCurrentRouting(StreamingResponseBody body) {
+        if (PRIMARY_ONLY.get() == null) {
+            return body;
+        }
+        return out -> {
+            Boolean previous = PRIMARY_ONLY.get();
+            PRIMARY_ONLY.set(Boolean.TRUE);
+            try {
+                body.writeTo(out);
+            } finally {
+                if (previous == null) {
+                    PRIMARY_ONLY.remove();
+                }
+            }
+        };
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || PRIMARY_ONLY.get() != null) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.key;
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return primary.getConnection();
+        }
+        Replica replica = replica(key);
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            // реплика недоступна: чтение не должно падать, пока она не вернётся
+            markDown(replica, e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Проверка реплик: соединение и отставание применения изменений от основной базы.
+     */
+    @Scheduled(fixedDelayString = "${replica.health.interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                long lagMs = maxLagMs > 0 ? lagMs(connection) : 0;
+                if (lagMs > maxLagMs && maxLagMs > 0) {
+                    markDown(replica, "replication lag " + lagMs + " ms");
+                } else if (!replica.healthy) {
+                    log.info("Replica {} is available again", replica.key);
+                    replica.healthy = true;
+                }
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Cannot close replica {}", replica.key, e);
+                }
+            }
+        }
+    }
+
+    private static long lagMs(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private Replica replica(Object key) {
+        return replicas.stream()
+                .filter(replica -> replica.key.equals(key))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown replica: " + key));
+    }
+
+    private static void markDown(Replica replica, String reason) {
+        if (replica.healthy) {
+            log.warn("Replica {} is excluded from reads: {}", replica.key, reason);
+            replica.healthy = false;
+        }
+    }
+
+    private static final class Replica {
+        private final String key;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String key, DataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ru.practicum.item;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвейер фонового разрешения ссылок: элемент сохраняется сразу в состоянии PENDING,
+ * а метаданные получают виртуальные потоки-обработчики из ограниченной очереди.
+ * Ссылки на хосты с разомкнутым предохранителем откладываются и ставятся в очередь повторно,
+ * когда предохранитель пропустит пробный запрос; так работает и синхронный режим.
+ */
+@Slf4j
+@Component
+class AsyncItemResolver {
+    private final UrlMetadataRetriever retriever;
+    private final ItemMetadataWriter writer;
+    private final boolean enabled;
+    private final long submitTimeoutMs;
+    private final int maxDeferrals;
+    private final BlockingQueue<ResolveTask> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor deferred;
+
+    AsyncItemResolver(MeterRegistry meterRegistry,
+                      UrlMetadataRetriever retriever,
+                      ItemMetadataWriter writer,
+                      @Value("${item-resolver.async.enabled:false}") boolean enabled,
+                      @Value("${item-resolver.async.workers:32}") int workerCount,
+                      @Value("${item-resolver.async.queue-capacity:1000}") int queueCapacity,
+                      @Value("${item-resolver.async.submit-timeout-ms:100}") long submitTimeoutMs,
+                      @Value("${item-resolver.max-deferrals:5}") int maxDeferrals) {
+        this.retriever = retriever;
+        this.writer = writer;
+        this.enabled = enabled;
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.maxDeferrals = maxDeferrals;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // обработчики нужны и в синхронном режиме - для отложенных ссылок;
+        // простаивающий виртуальный поток почти ничего не стоит
+        Thread.Builder builder = Thread.ofVirtual().name("item-resolver-", 0);
+        for (int i = 0; i < (enabled ? workerCount : 1); i++) {
+            workers.add(builder.start(this::workLoop));
+        }
+        this.deferred = new ScheduledThreadPoolExecutor(1,
+                Thread.ofVirtual().name("item-resolver-deferred").factory());
+        Gauge.builder("item.resolver.queue", queue, BlockingQueue::size)
+                .description("Ссылки, ожидающие фонового разрешения")
+                .register(meterRegistry);
+        Gauge.builder("item.resolver.deferred", deferred, executor -> executor.getQueue().size())
+                .description("Ссылки, отложенные до восстановления хоста")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит элемент в очередь после фиксации текущей транзакции,
+     * чтобы обработчик гарантированно увидел сохранённую строку.
+     */
+    public void submitAfterCommit(long itemId, String url) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(itemId, url);
+                }
+            });
+        } else {
+            submit(itemId, url);
+        }
+    }
+
+    /**
+     * Откладывает разрешение ссылки, сохранённой в состоянии PENDING, на время delay после фиксации транзакции.
+     */
+    public void deferAfterCommit(long itemId, String url, Duration delay) {
+        ResolveTask task = new ResolveTask(itemId, url, 1);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    defer(task, delay);
+                }
+            });
+        } else {
+            defer(task, delay);
+        }
+    }
+
+    private void defer(ResolveTask task, Duration delay) {
+        try {
+            deferred.schedule(() -> submit(task), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // приложение останавливается
+            writer.markFailed(task.itemId());
+        }
+    }
+
+    private void submit(long itemId, String url) {
+        submit(new ResolveTask(itemId, url, 0));
+    }
+
+    private void submit(ResolveTask task) {
+        long itemId = task.itemId();
+        boolean accepted;
+        try {
+            accepted = queue.offer(task, submitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            // очередь переполнена: клиент увидит FAILED и сможет повторить сохранение
+            log.warn("Resolution queue is full, item {} is marked as failed", itemId);
+            writer.markFailed(itemId);
+        }
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final ResolveTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                resolve(task);
+            } catch (RuntimeException e) {
+                log.error("Cannot store resolution result for item {}", task.itemId(), e);
+            }
+        }
+    }
+
+    private void resolve(ResolveTask task) {
+        final UrlMetadataRetriever.UrlMetadata urlMetadata;
+        try {
+            // обращение к сайту идёт без транзакции и без соединения с БД
+            urlMetadata = retriever.retrieve(task.url());
+        } catch (HostUnavailableException e) {
+            if (task.deferrals() < maxDeferrals) {
+                log.debug("Host {} is unavailable, item {} is deferred for {}",
+                        e.getHost(), task.itemId(), e.getRetryAfter());
+                defer(new ResolveTask(task.itemId(), task.url(), task.deferrals() + 1), e.getRetryAfter());
+            } else {
+                log.warn("Host {} is still unavailable, item {} is marked as failed", e.getHost(), task.itemId());
+                writer.markFailed(task.itemId());
+            }
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Cannot resolve url {} for item {}: {}", task.url(), task.itemId(), e.getMessage());
+            writer.markFailed(task.itemId());
+            return;
+        }
+        writer.applyMetadata(task.itemId(), urlMetadata);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        deferred.shutdownNow();
+        workers.forEach(Thread::interrupt);
+    }
+
+    // deferrals - сколько раз ссылка уже откладывалась из-за недоступности хоста
+    private record ResolveTask(long itemId, String url, int deferrals) {
+    }
+}
@@ -0,0 +1,58 @@
+package ru.practicum.item;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Переход от асинхронных обращений к сайтам к блокирующим: синхронные методы {@link UrlFetcher}
+ * и {@link UrlMetadataRetriever} ждут результата асинхронных и выбрасывают то же исключение,
+ * которым он завершился.
+ */
+final class CompletableFutures {
+    private CompletableFutures() {
+    }
+
+    /**
+     * Ждёт результата. Если поток прерван, future отменяется - запрос к сайту прекращается.
+     */
+    static <T> T await(CompletableFuture<T> future, Object url) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Cannot get the metadata for url: " + url
+                    + " because the thread was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Исходная ошибка без обёрток CompletionException и ExecutionException, которые добавляют цепочки future.
+     */
+    static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Ошибку можно выбросить из шага цепочки или синхронного метода: RuntimeException как есть,
+     * Error выбрасывается сразу, проверяемые исключения оборачиваются.
+     */
+    static RuntimeException propagate(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error e) {
+            throw e;
+        }
+        return new CompletionException(cause);
+    }
+}
@@ -0,0 +1,149 @@
+package ru.practicum.item;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Предохранитель одного хоста.
+ * CLOSED - запросы идут, результаты последних windowSize запросов запоминаются; когда доля ошибок
+ * и медленных ответов достигает порога, предохранитель размыкается.
+ * OPEN - запросы сразу отклоняются, пока не пройдёт openDuration.
+ * HALF_OPEN - пропускается halfOpenTrials пробных запросов: все успешны - CLOSED, хоть одна ошибка - снова OPEN.
+ * Состояние защищено ReentrantLock, а не synchronized: виртуальный поток под монитором
+ * не может освободить поток-носитель.
+ */
+final class HostCircuitBreaker {
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    record Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+                    Duration slowCallDuration, Duration openDuration, int halfOpenTrials) {
+    }
+
+    private final Settings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    // кольцевой буфер результатов: true - ошибка или медленный ответ
+    private final boolean[] window;
+    private int windowPos;
+    private int windowCalls;
+    private int windowBad;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    HostCircuitBreaker(Settings settings) {
+        this.settings = settings;
+        this.window = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * Можно ли отправить запрос. В состоянии HALF_OPEN каждое разрешение - это пробный запрос,
+     * его результат обязательно передаётся в onResult или release.
+     */
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < settings.openDuration().toNanos()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= settings.halfOpenTrials()) {
+                    return false;
+                }
+                trialsStarted++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onResult(boolean failed, long elapsedNanos) {
+        lock.lock();
+        try {
+            boolean bad = failed || elapsedNanos > settings.slowCallDuration().toNanos();
+            switch (state) {
+                case CLOSED -> {
+                    if (windowCalls == window.length) {
+                        windowBad -= window[windowPos] ? 1 : 0;
+                    } else {
+                        windowCalls++;
+                    }
+                    window[windowPos] = bad;
+                    windowBad += bad ? 1 : 0;
+                    windowPos = (windowPos + 1) % window.length;
+                    if (windowCalls >= settings.minimumCalls()
+                            && windowBad >= settings.failureRateThreshold() * windowCalls) {
+                        open();
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (bad) {
+                        open();
+                    } else if (++trialsSucceeded >= settings.halfOpenTrials()) {
+                        close();
+                    }
+                }
+                case OPEN -> {
+                    // ответ на запрос, начатый до размыкания, ничего не меняет
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Запрос не был выполнен (поток прерван): пробное разрешение возвращается.
+     */
+    void release() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+                trialsStarted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Duration getRetryAfter() {
+        lock.lock();
+        try {
+            if (state != State.OPEN) {
+                return Duration.ZERO;
+            }
+            long left = settings.openDuration().toNanos() - (System.nanoTime() - openedAtNanos);
+            return Duration.ofNanos(Math.max(0, left));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowPos = 0;
+        windowCalls = 0;
+        windowBad = 0;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.practicum.item;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Выбор способа первого обращения к сайту.
+ * По умолчанию сразу отправляется GET: для html-страниц он всё равно нужен, и лишний HEAD только
+ * удваивает задержку. Хосты, отдающие на GET тяжёлые нетекстовые данные, запоминаются
+ * и опрашиваются через HEAD.
+ */
+@Component
+class HostProbeStrategies {
+    enum Strategy { GET, HEAD_THEN_GET }
+
+    private final Cache<String, Strategy> byHost;
+    private final Map<Strategy, Timer> timers = new EnumMap<>(Strategy.class);
+
+    HostProbeStrategies(MeterRegistry meterRegistry,
+                        @Value("${url-metadata-retriever.probe.max-hosts:10000}") long maxHosts,
+                        @Value("${url-metadata-retriever.probe.ttl-hours:24}") long ttlHours) {
+        this.byHost = CacheBuilder.newBuilder()
+                .maximumSize(maxHosts)
+                .expireAfterAccess(Duration.ofHours(ttlHours))
+                .build();
+        for (Strategy strategy : Strategy.values()) {
+            timers.put(strategy, Timer.builder("url.metadata.probe")
+                    .description("Время получения метаданных ссылки в зависимости от способа обращения")
+                    .tag("strategy", strategy.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public Strategy strategyFor(String host) {
+        if (host == null) {
+            return Strategy.GET;
+        }
+        Strategy strategy = byHost.getIfPresent(host);
+        return strategy == null ? Strategy.GET : strategy;
+    }
+
+    /**
+     * Запоминает, что было на хосте: нетекстовое содержимое - дальше сначала HEAD,
+     * текст - дальше сразу GET, так как HEAD для страниц не нужен.
+     */
+    public void remember(String host, boolean textContent) {
+        if (host == null) {
+            return;
+        }
+        if (textContent) {
+            byHost.invalidate(host);
+        } else {
+            byHost.put(host, Strategy.HEAD_THEN_GET);
+        }
+    }
+
+    public Timer timer(Strategy strategy) {
+        return timers.get(strategy);
+    }
+}
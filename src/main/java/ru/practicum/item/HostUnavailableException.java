@@ -0,0 +1,21 @@
+package ru.practicum.item;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Обращение к хосту не выполнялось: предохранитель хоста разомкнут после серии ошибок или медленных ответов.
+ */
+@Getter
+public class HostUnavailableException extends RuntimeException {
+    private final String host;
+    // когда предохранитель пропустит пробный запрос
+    private final Duration retryAfter;
+
+    public HostUnavailableException(String host, Duration retryAfter) {
+        super("The host is temporarily unavailable: " + host + ", retry after " + retryAfter.toSeconds() + " s");
+        this.host = host;
+        this.retryAfter = retryAfter;
+    }
+}
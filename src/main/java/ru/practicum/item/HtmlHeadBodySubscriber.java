@@ -0,0 +1,134 @@
+package ru.practicum.item;
+
+import org.springframework.http.MediaType;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Получатель тела ответа, который передаёт страницу в {@link HtmlHeadScanner} по мере поступления.
+ * Страница целиком в памяти не хранится; чтение обрывается, когда сканер нашёл всё нужное
+ * или когда прочитано maxBytes байт.
+ */
+final class HtmlHeadBodySubscriber implements HttpResponse.BodySubscriber<HtmlHeadScanner> {
+    private static final int CHAR_BUFFER_SIZE = 8192;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final HtmlHeadScanner scanner = new HtmlHeadScanner();
+    private final CompletableFuture<HtmlHeadScanner> result = new CompletableFuture<>();
+    private final CharsetDecoder decoder;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    private final long maxBytes;
+    private long received;
+    // начало многобайтового символа, разрезанного границей куска
+    private ByteBuffer leftover = EMPTY;
+    private Flow.Subscription subscription;
+
+    HtmlHeadBodySubscriber(Charset charset, long maxBytes) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.maxBytes = maxBytes;
+    }
+
+    static Charset charsetOf(HttpHeaders headers) {
+        // кодировка из заголовка Content-Type, по умолчанию UTF-8 (как у BodyHandlers.ofString)
+        return headers.firstValue("Content-Type")
+                .map(contentType -> {
+                    try {
+                        return MediaType.parseMediaType(contentType).getCharset();
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                })
+                .orElse(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CompletionStage<HtmlHeadScanner> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer item : items) {
+            long budget = maxBytes - received;
+            if (item.remaining() > budget) {
+                item.limit(item.position() + (int) budget);
+            }
+            received += item.remaining();
+            decode(item, false);
+            if (scanner.isComplete() || received >= maxBytes) {
+                // остаток страницы не нужен: отменяем получение и отдаём результат
+                subscription.cancel();
+                complete();
+                return;
+            }
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (!result.isDone()) {
+            decode(EMPTY, true);
+            complete();
+        }
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        long start = System.nanoTime();
+        ByteBuffer input = bytes;
+        if (leftover.hasRemaining()) {
+            input = ByteBuffer.allocate(leftover.remaining() + bytes.remaining())
+                    .put(leftover)
+                    .put(bytes)
+                    .flip();
+        }
+        CoderResult coderResult;
+        do {
+            coderResult = decoder.decode(input, chars, endOfInput);
+            chars.flip();
+            scanner.feed(chars);
+            chars.clear();
+        } while (coderResult.isOverflow() && !scanner.isComplete());
+        leftover = input.hasRemaining() && !endOfInput
+                ? ByteBuffer.allocate(input.remaining()).put(input).flip()
+                : EMPTY;
+        scanner.addParseNanos(System.nanoTime() - start);
+    }
+
+    private void complete() {
+        scanner.finish();
+        result.complete(scanner);
+    }
+}
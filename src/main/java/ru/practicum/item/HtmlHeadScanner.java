@@ -0,0 +1,273 @@
+package ru.practicum.item;
+
+import org.jsoup.parser.Parser;
+
+import java.nio.CharBuffer;
+import java.util.Set;
+
+/**
+ * Потоковый поиск заголовка страницы и тэгов img/video без построения DOM.
+ * Заголовок, как и Document.title() в Jsoup, берётся только из head: title после начала body не учитывается.
+ * Текст подаётся кусками произвольной длины; разбор прекращается,
+ * как только найдены заголовок (или начался body) и оба признака.
+ */
+final class HtmlHeadScanner {
+    private static final int MAX_TAG_NAME_LENGTH = 16;
+    private static final int MAX_TITLE_LENGTH = 4096;
+    // содержимое этих тэгов не разбирается как html, например "<img" внутри скрипта - не изображение
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style", "textarea", "title");
+    // тэги, которые разбор html оставляет в head; любой другой открывающий тэг или текст начинает body
+    private static final Set<String> HEAD_TAGS = Set.of("html", "head", "base", "basefont", "bgsound", "link",
+            "meta", "noframes", "noscript", "script", "style", "template", "title");
+    // закрывающие тэги, которые тоже начинают body, если встретились раньше него
+    private static final Set<String> BODY_END_TAGS = Set.of("body", "html", "br");
+
+    private enum State { TEXT, TAG_OPEN, TAG_NAME, IN_TAG, MARKUP, COMMENT, SKIP_TO_GT, RAW_TEXT }
+
+    private State state = State.TEXT;
+    private final StringBuilder tagName = new StringBuilder(MAX_TAG_NAME_LENGTH);
+    private boolean endTag;
+    // внутри атрибутов: кавычка открытого значения и признак только что прочитанного '='
+    private char quote;
+    private boolean afterEquals;
+    private int dashes;
+    // закрывающий тэг, который ожидается в RAW_TEXT, и сколько его символов уже совпало
+    private String rawTag;
+    private int rawMatched = -1;
+    private final StringBuilder rawPending = new StringBuilder();
+
+    private StringBuilder title;
+    private String foundTitle;
+    private boolean inBody;
+    private boolean hasImage;
+    private boolean hasVideo;
+    // время декодирования и разбора, без ожидания данных из сети
+    private long parseNanos;
+
+    public void feed(CharBuffer chars) {
+        while (chars.hasRemaining() && !isComplete()) {
+            accept(chars.get());
+        }
+    }
+
+    /**
+     * Вызывается, когда данные закончились (конец страницы или исчерпан лимит).
+     */
+    public void finish() {
+        if (title != null) {
+            // незакрытый title, как и в Jsoup, забирает весь оставшийся текст
+            rawPending.setLength(0);
+            foundTitle = normalizeTitle(title);
+            title = null;
+        }
+    }
+
+    void addParseNanos(long nanos) {
+        parseNanos += nanos;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public boolean isComplete() {
+        return (foundTitle != null || inBody) && hasImage && hasVideo;
+    }
+
+    public String getTitle() {
+        return foundTitle == null ? "" : foundTitle;
+    }
+
+    public boolean isHasImage() {
+        return hasImage;
+    }
+
+    public boolean isHasVideo() {
+        return hasVideo;
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT -> {
+                if (c == '<') {
+                    state = State.TAG_OPEN;
+                } else if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                    // текст вне тэгов может быть только в body
+                    inBody = true;
+                }
+            }
+            case TAG_OPEN -> {
+                if (c == '!') {
+                    state = State.MARKUP;
+                    dashes = 0;
+                } else if (c == '/') {
+                    startTagName(true);
+                } else if (Character.isLetter(c)) {
+                    startTagName(false);
+                    tagName.append(Character.toLowerCase(c));
+                } else if (c != '<') {
+                    state = State.TEXT;
+                }
+            }
+            case TAG_NAME -> {
+                if (Character.isLetterOrDigit(c) || c == '-') {
+                    if (tagName.length() < MAX_TAG_NAME_LENGTH) {
+                        tagName.append(Character.toLowerCase(c));
+                    }
+                } else {
+                    onTagName();
+                    state = State.IN_TAG;
+                    quote = 0;
+                    afterEquals = false;
+                    accept(c);
+                }
+            }
+            case IN_TAG -> {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '>') {
+                    onTagClose();
+                } else if (c == '=') {
+                    afterEquals = true;
+                } else if (afterEquals && (c == '"' || c == '\'')) {
+                    quote = c;
+                    afterEquals = false;
+                } else if (!Character.isWhitespace(c)) {
+                    afterEquals = false;
+                }
+            }
+            case MARKUP -> {
+                if (c == '-' && ++dashes == 2) {
+                    state = State.COMMENT;
+                    dashes = 0;
+                } else if (c == '>') {
+                    state = State.TEXT;
+                } else if (c != '-' || dashes > 1) {
+                    state = State.SKIP_TO_GT;
+                }
+            }
+            case COMMENT -> {
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    state = State.TEXT;
+                } else {
+                    dashes = 0;
+                }
+            }
+            case SKIP_TO_GT -> {
+                if (c == '>') {
+                    state = State.TEXT;
+                }
+            }
+            case RAW_TEXT -> acceptRawText(c);
+        }
+    }
+
+    private void startTagName(boolean isEndTag) {
+        state = State.TAG_NAME;
+        endTag = isEndTag;
+        tagName.setLength(0);
+    }
+
+    private void onTagName() {
+        String name = tagName.toString();
+        if (endTag) {
+            if (BODY_END_TAGS.contains(name)) {
+                inBody = true;
+            }
+            return;
+        }
+        if (!HEAD_TAGS.contains(name)) {
+            inBody = true;
+        }
+        if (name.equals("img")) {
+            hasImage = true;
+        } else if (name.equals("video")) {
+            hasVideo = true;
+        }
+    }
+
+    private void onTagClose() {
+        String name = tagName.toString();
+        if (!endTag && name.equals("title") && !inBody && foundTitle == null && title == null) {
+            title = new StringBuilder();
+            enterRawText(name);
+        } else if (!endTag && RAW_TEXT_TAGS.contains(name)) {
+            enterRawText(name);
+        } else {
+            state = State.TEXT;
+        }
+    }
+
+    private void enterRawText(String name) {
+        state = State.RAW_TEXT;
+        rawTag = name;
+        rawMatched = -1;
+    }
+
+    private void acceptRawText(char c) {
+        if (rawMatched == -1) {
+            if (c == '<') {
+                rawMatched = 0;
+                rawPending.setLength(0);
+                rawPending.append(c);
+            } else {
+                appendTitle(c);
+            }
+        } else if (rawMatched == 0) {
+            if (c == '/') {
+                rawMatched = 1;
+                rawPending.append(c);
+            } else {
+                rejectPending(c);
+            }
+        } else if (rawMatched - 1 < rawTag.length()) {
+            if (Character.toLowerCase(c) == rawTag.charAt(rawMatched - 1)) {
+                rawMatched++;
+                rawPending.append(c);
+            } else {
+                rejectPending(c);
+            }
+        } else if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+            // найден закрывающий тэг
+            if (title != null) {
+                foundTitle = normalizeTitle(title);
+                title = null;
+            }
+            rawMatched = -1;
+            endTag = true;
+            tagName.setLength(0);
+            tagName.append(rawTag);
+            state = State.IN_TAG;
+            quote = 0;
+            afterEquals = false;
+            accept(c);
+        } else {
+            rejectPending(c);
+        }
+    }
+
+    private void rejectPending(char c) {
+        for (int i = 0; i < rawPending.length(); i++) {
+            appendTitle(rawPending.charAt(i));
+        }
+        rawMatched = -1;
+        acceptRawText(c);
+    }
+
+    private void appendTitle(char c) {
+        if (title != null && title.length() < MAX_TITLE_LENGTH) {
+            title.append(c);
+        }
+    }
+
+    private static String normalizeTitle(CharSequence raw) {
+        // так же, как Document.title() в Jsoup: сущности раскрыты, пробельные символы схлопнуты
+        return Parser.unescapeEntities(raw.toString(), false)
+                .replaceAll("[ \\t\\n\\f\\r\\u00A0]+", " ")
+                .trim();
+    }
+}
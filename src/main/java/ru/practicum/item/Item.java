@@ -16,31 +16,46 @@ import java.util.Set;
 @Setter
 @ToString
 public class Item {
+    // id выдаются блоками из последовательности (pooled-lo): вставки откладываются до flush
+    // и уходят пакетами, а не по одной, как при IDENTITY
+    static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_id")
+    @SequenceGenerator(name = "items_id", sequenceName = "items_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
     @Column
     private String url;
-    @Column
-    private String resolvedUrl;
-    @Column
-    private String mimeType;
-    @Column
-    private String title;
-    @Column
-    private boolean hasImage;
-    @Column
-    private boolean hasVideo;
+    // метаданные страницы общие для всех пользователей; пока ссылка не разрешена - null
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "url_id")
+    @ToString.Exclude
+    private ResolvedUrl resolvedUrl;
     @Column
     private Instant dateResolved; // дата обращения к странице
+    @Enumerated(EnumType.STRING)
+    private ItemState state;
     @ElementCollection
     @CollectionTable(name = "tags", joinColumns = @JoinColumn(name = "item_id"))
     @Column(name = "name")
     private Set<String> tags = new HashSet<>();
 
+    /**
+     * Меняет тэги в той же коллекции: Hibernate удаляет из tags только исчезнувшие строки и вставляет
+     * только новые. Новая коллекция вместо прежней удалила бы и вставила заново все строки.
+     */
+    public void setTags(Set<String> tags) {
+        if (tags == null) {
+            this.tags.clear();
+            return;
+        }
+        this.tags.retainAll(tags);
+        this.tags.addAll(tags);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,401 @@
+package ru.practicum.item;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.user.UserCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт ссылок: метаданные получаются параллельно с ограничением одновременных
+ * обращений на хост и в целом, а готовые элементы записываются пакетами через JDBC batch.
+ * Результат по каждой ссылке отдаётся клиенту сразу, как только она обработана,
+ * поэтому медленный хост не задерживает остальные.
+ * Обращения к сайтам асинхронные: один поток импорта запускает их и записывает результаты.
+ */
+@Slf4j
+@Service
+class ItemBatchImporter {
+    private static final String INSERT_ITEM = "INSERT INTO items (id, user_id, url, url_id, date_resolved, state) "
+            + "VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (user_id, url_id) DO NOTHING";
+    private static final String INSERT_TAG = "INSERT INTO tags (item_id, name) VALUES (?, ?)";
+    // тэги повтора добавляются к уже сохранённому элементу, как при POST /items; уникального ключа у tags нет
+    private static final String MERGE_TAG = "INSERT INTO tags (item_id, name) SELECT ?, ? "
+            + "WHERE NOT EXISTS (SELECT 1 FROM tags WHERE item_id = ? AND name = ?)";
+
+    private final UrlMetadataRetriever retriever;
+    private final UserCache userCache;
+    private final ItemTagIndex tagIndex;
+    private final ResolvedUrlStore urlStore;
+    private final ItemReadCache cache;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    // ограничения общие для всех одновременных импортов
+    private final Semaphore globalPermits;
+    private final int perHostConcurrency;
+    private final long itemTimeoutSec;
+    private final int batchSize;
+    private final int maxItems;
+
+    ItemBatchImporter(UrlMetadataRetriever retriever,
+                      UserCache userCache,
+                      ItemTagIndex tagIndex,
+                      ResolvedUrlStore urlStore,
+                      ItemReadCache cache,
+                      NamedParameterJdbcTemplate jdbcTemplate,
+                      TransactionTemplate transactionTemplate,
+                      ObjectMapper objectMapper,
+                      @Value("${item-batch.global-concurrency:64}") int globalConcurrency,
+                      @Value("${item-batch.per-host-concurrency:4}") int perHostConcurrency,
+                      @Value("${item-batch.item-timeout-sec:120}") long itemTimeoutSec,
+                      @Value("${item-batch.batch-size:100}") int batchSize,
+                      @Value("${item-batch.max-items:10000}") int maxItems) {
+        this.retriever = retriever;
+        this.userCache = userCache;
+        this.tagIndex = tagIndex;
+        this.urlStore = urlStore;
+        this.cache = cache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.globalPermits = new Semaphore(globalConcurrency);
+        this.perHostConcurrency = perHostConcurrency;
+        this.itemTimeoutSec = itemTimeoutSec;
+        this.batchSize = batchSize;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Проверяет запрос сразу, а сам импорт выполняется при записи ответа.
+     */
+    public StreamingResponseBody startImport(long userId, List<ItemDto> items) {
+        if (!userCache.exists(userId)) {
+            throw new RuntimeException("User not found");
+        }
+        if (items.size() > maxItems) {
+            throw new RuntimeException(String.format("Too many items in one import: %d, the limit is %d",
+                    items.size(), maxItems));
+        }
+        return out -> importItems(userId, items, out);
+    }
+
+    /**
+     * То же для ссылок, которые читаются из тела запроса по одной: читается не больше max-items + 1 значения,
+     * так что слишком большой импорт отклоняется, не занимая память под весь запрос.
+     */
+    public StreamingResponseBody startImport(long userId, Iterator<ItemDto> lines) {
+        if (!userCache.exists(userId)) {
+            throw new RuntimeException("User not found");
+        }
+        List<ItemDto> items = new ArrayList<>();
+        while (lines.hasNext()) {
+            if (items.size() == maxItems) {
+                throw new RuntimeException(String.format("Too many items in one import, the limit is %d",
+                        maxItems));
+            }
+            items.add(lines.next());
+        }
+        return startImport(userId, items);
+    }
+
+    private void importItems(long userId, List<ItemDto> items, OutputStream out) throws IOException {
+        BlockingQueue<Resolution> resolved = new LinkedBlockingQueue<>();
+        Launcher launcher = new Launcher(items, resolved);
+        try {
+            List<Resolution> batch = new ArrayList<>(batchSize);
+            for (int remaining = items.size(); remaining > 0; remaining -= batch.size()) {
+                launcher.launch();
+                batch.clear();
+                // ждём хотя бы одну готовую ссылку и забираем всё, что успело накопиться
+                batch.add(resolved.take());
+                resolved.drainTo(batch, batchSize - 1);
+                // освободившиеся места занимаем до записи, чтобы запросы к сайтам шли параллельно с ней
+                launcher.completed(batch);
+                launcher.launch();
+                List<ItemImportResultDto> results = transactionTemplate.execute(status -> store(userId, batch));
+                for (ItemImportResultDto result : results) {
+                    out.write(objectMapper.writeValueAsBytes(result));
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted", e);
+        } finally {
+            // клиент отключился или импорт прерван: незавершённые запросы к сайтам не нужны
+            launcher.cancelAll();
+        }
+    }
+
+    /**
+     * Запускает получение метаданных ссылок одного импорта: не больше perHostConcurrency одновременно
+     * на хост и не больше общего числа разрешений на все импорты. Хосты обслуживаются по очереди,
+     * поэтому ссылки, ждущие медленный хост, не занимают общие разрешения.
+     * Вызывается только из потока импорта.
+     */
+    private final class Launcher {
+        private final List<ItemDto> items;
+        private final BlockingQueue<Resolution> resolved;
+        // ещё не запущенные ссылки по хостам
+        private final Map<String, Deque<Integer>> waitingByHost = new HashMap<>();
+        private final Map<String, Integer> activeByHost = new HashMap<>();
+        // хосты, у которых есть незапущенные ссылки и свободные места
+        private final Deque<String> ready = new ArrayDeque<>();
+        private final Map<Integer, CompletableFuture<UrlMetadataRetriever.UrlMetadata>> running = new HashMap<>();
+
+        private Launcher(List<ItemDto> items, BlockingQueue<Resolution> resolved) {
+            this.items = items;
+            this.resolved = resolved;
+            for (int i = 0; i < items.size(); i++) {
+                String url = items.get(i).getUrl();
+                if (url == null || url.isBlank()) {
+                    // строка без адреса не прерывает импорт, а получает свой результат FAILED
+                    resolved.add(new Resolution(i, items.get(i), null, "URL is missing"));
+                    continue;
+                }
+                String host = hostOf(url);
+                waitingByHost.computeIfAbsent(host, key -> {
+                    ready.add(key);
+                    return new ArrayDeque<>();
+                }).add(i);
+            }
+        }
+
+        private void launch() throws InterruptedException {
+            while (!ready.isEmpty()) {
+                if (!globalPermits.tryAcquire()) {
+                    if (!running.isEmpty()) {
+                        // место освободится, когда завершится одна из своих ссылок
+                        return;
+                    }
+                    // все разрешения заняты другими импортами
+                    globalPermits.acquire();
+                }
+                String host = ready.poll();
+                Deque<Integer> waiting = waitingByHost.get(host);
+                int index = waiting.poll();
+                int active = activeByHost.merge(host, 1, Integer::sum);
+                if (!waiting.isEmpty() && active < perHostConcurrency) {
+                    ready.add(host);
+                }
+                start(index);
+            }
+        }
+
+        private void start(int index) {
+            ItemDto itemDto = items.get(index);
+            CompletableFuture<UrlMetadataRetriever.UrlMetadata> metadata;
+            try {
+                metadata = retriever.retrieveAsync(itemDto.getUrl());
+            } catch (RuntimeException e) {
+                metadata = CompletableFuture.failedFuture(e);
+            }
+            running.put(index, metadata);
+            // таймаут отменяет запрос к сайту
+            metadata.orTimeout(itemTimeoutSec, TimeUnit.SECONDS).whenComplete((result, error) -> {
+                globalPermits.release();
+                resolved.add(error == null
+                        ? new Resolution(index, itemDto, result, null)
+                        : new Resolution(index, itemDto, null, errorMessage(error)));
+            });
+        }
+
+        private void completed(List<Resolution> batch) {
+            for (Resolution resolution : batch) {
+                if (running.remove(resolution.index()) == null) {
+                    // ссылка без адреса не запускалась и места на хосте не занимала
+                    continue;
+                }
+                String host = hostOf(resolution.itemDto().getUrl());
+                int active = activeByHost.merge(host, -1, Integer::sum);
+                Deque<Integer> waiting = waitingByHost.get(host);
+                // хост снова готов, если у него есть ссылки и он не стоит в очереди
+                if (!waiting.isEmpty() && active == perHostConcurrency - 1) {
+                    ready.add(host);
+                }
+            }
+        }
+
+        private void cancelAll() {
+            running.values().forEach(metadata -> metadata.cancel(true));
+        }
+    }
+
+    private String errorMessage(Throwable error) {
+        Throwable cause = CompletableFutures.unwrap(error);
+        if (cause instanceof TimeoutException) {
+            return "Timed out after " + itemTimeoutSec + " s";
+        }
+        if (cause instanceof CancellationException) {
+            return "Import was interrupted";
+        }
+        return cause.getMessage();
+    }
+
+    private List<ItemImportResultDto> store(long userId, List<Resolution> batch) {
+        List<ItemImportResultDto> results = new ArrayList<>(batch.size());
+        List<Resolution> succeeded = new ArrayList<>(batch.size());
+        for (Resolution resolution : batch) {
+            if (resolution.metadata() == null) {
+                results.add(result(resolution, ItemImportResultDto.Status.FAILED, null, resolution.error()));
+            } else {
+                succeeded.add(resolution);
+            }
+        }
+        if (succeeded.isEmpty()) {
+            return results;
+        }
+
+        // общие метаданные страниц - одна запись urls на адрес, в том числе для других пользователей
+        Map<String, Long> urlIds = urlStore.upsertAll(succeeded.stream().map(Resolution::metadata).toList());
+        // ссылки, уже сохранённые пользователем ранее или встретившиеся в этом же пакете, не дублируем
+        Set<Long> known = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT url_id FROM items WHERE user_id = :userId AND url_id IN (:urlIds)",
+                new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("urlIds", urlIds.values()),
+                Long.class));
+        List<Resolution> toInsert = new ArrayList<>(succeeded.size());
+        List<Resolution> duplicates = new ArrayList<>();
+        for (Resolution resolution : succeeded) {
+            if (known.add(urlIds.get(resolution.metadata().getResolvedUrl()))) {
+                toInsert.add(resolution);
+            } else {
+                duplicates.add(resolution);
+            }
+        }
+        if (toInsert.isEmpty()) {
+            results.addAll(mergeDuplicates(userId, duplicates, urlIds));
+            return results;
+        }
+        cache.evictAfterCommit(userId);
+
+        List<Long> ids = allocateIds(toInsert.size());
+        List<Object[]> itemRows = new ArrayList<>(toInsert.size());
+        for (int i = 0; i < toInsert.size(); i++) {
+            UrlMetadataRetriever.UrlMetadata metadata = toInsert.get(i).metadata();
+            itemRows.add(new Object[]{ids.get(i), userId, toInsert.get(i).itemDto().getUrl(),
+                    urlIds.get(metadata.getResolvedUrl()), Timestamp.from(metadata.getDateResolved()),
+                    ItemState.RESOLVED.name()});
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_ITEM, itemRows);
+        // число строк по каждой вставке не годится: при reWriteBatchedInserts драйвер возвращает
+        // SUCCESS_NO_INFO, поэтому вставленные строки определяем по id
+        Set<Long> inserted = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM items WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids), Long.class));
+
+        List<Object[]> tagRows = new ArrayList<>();
+        Map<Long, Set<String>> tagsByItemId = new HashMap<>();
+        for (int i = 0; i < toInsert.size(); i++) {
+            Resolution resolution = toInsert.get(i);
+            Long id = ids.get(i);
+            if (!inserted.contains(id)) {
+                // ту же страницу успело сохранить другое одновременное сохранение
+                duplicates.add(resolution);
+                continue;
+            }
+            if (resolution.itemDto().getTags() != null) {
+                for (String tag : resolution.itemDto().getTags()) {
+                    tagRows.add(new Object[]{id, tag});
+                }
+                tagsByItemId.put(id, resolution.itemDto().getTags());
+            }
+            results.add(result(resolution, ItemImportResultDto.Status.CREATED, id, null));
+        }
+        if (!tagRows.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_TAG, tagRows);
+            tagIndex.addTags(userId, tagsByItemId);
+        }
+        results.addAll(mergeDuplicates(userId, duplicates, urlIds));
+        return results;
+    }
+
+    /**
+     * Страницы, которые пользователь уже сохранил: тэги из строки импорта добавляются к сохранённому элементу
+     * (tags и item_tags), как при сохранении одной ссылки, а результат - DUPLICATE с id этого элемента.
+     */
+    private List<ItemImportResultDto> mergeDuplicates(long userId, List<Resolution> duplicates,
+                                                      Map<String, Long> urlIds) {
+        if (duplicates.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Long> itemIdByUrlId = new HashMap<>();
+        jdbcTemplate.query("SELECT id, url_id FROM items WHERE user_id = :userId AND url_id IN (:urlIds)",
+                new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("urlIds", duplicates.stream()
+                                .map(resolution -> urlIds.get(resolution.metadata().getResolvedUrl()))
+                                .collect(Collectors.toSet())),
+                rs -> {
+                    itemIdByUrlId.put(rs.getLong("url_id"), rs.getLong("id"));
+                });
+        List<ItemImportResultDto> results = new ArrayList<>(duplicates.size());
+        Map<Long, Set<String>> tagsByItemId = new HashMap<>();
+        for (Resolution resolution : duplicates) {
+            Long itemId = itemIdByUrlId.get(urlIds.get(resolution.metadata().getResolvedUrl()));
+            if (itemId != null && resolution.itemDto().getTags() != null) {
+                tagsByItemId.computeIfAbsent(itemId, id -> new HashSet<>()).addAll(resolution.itemDto().getTags());
+            }
+            results.add(result(resolution, ItemImportResultDto.Status.DUPLICATE, itemId, null));
+        }
+        List<Object[]> tagRows = new ArrayList<>();
+        tagsByItemId.forEach((itemId, tags) ->
+                tags.forEach(tag -> tagRows.add(new Object[]{itemId, tag, itemId, tag})));
+        if (!tagRows.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(MERGE_TAG, tagRows);
+            tagIndex.addTags(userId, tagsByItemId);
+            cache.evictAfterCommit(userId);
+        }
+        return results;
+    }
+
+    /**
+     * id для новых элементов из той же последовательности, что у Hibernate: каждое значение nextval -
+     * начало блока из Item.ID_ALLOCATION_SIZE id (pooled-lo), поэтому запрашиваются только блоки.
+     */
+    private List<Long> allocateIds(int count) {
+        int blocks = (count + Item.ID_ALLOCATION_SIZE - 1) / Item.ID_ALLOCATION_SIZE;
+        List<Long> starts = jdbcTemplate.getJdbcTemplate().queryForList(
+                "SELECT nextval(pg_get_serial_sequence('items', 'id')) FROM generate_series(1, ?)",
+                Long.class, blocks);
+        List<Long> ids = new ArrayList<>(count);
+        for (long start : starts) {
+            for (int i = 0; i < Item.ID_ALLOCATION_SIZE && ids.size() < count; i++) {
+                ids.add(start + i);
+            }
+        }
+        return ids;
+    }
+
+    private static ItemImportResultDto result(Resolution resolution, ItemImportResultDto.Status status,
+                                              Long itemId, String error) {
+        return new ItemImportResultDto(resolution.index(), resolution.itemDto().getUrl(), status, itemId, error);
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private record Resolution(int index, ItemDto itemDto, UrlMetadataRetriever.UrlMetadata metadata, String error) {
+    }
+}
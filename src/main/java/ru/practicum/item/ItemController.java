@@ -1,8 +1,18 @@
 package ru.practicum.item;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.common.KeysetPage;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Set;
 
@@ -11,24 +21,77 @@ import java.util.Set;
 @RequiredArgsConstructor
 public class ItemController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
     private final ItemService itemService;
+    private final ItemBatchImporter batchImporter;
+    private final ItemExporter exporter;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public List<ItemDto> get(@RequestHeader("X-Later-User-Id") long userId,
-                             @RequestParam(name = "tags", required = false) Set<String> tags) {
+    public ResponseEntity<List<ItemDto>> get(@RequestHeader("X-Later-User-Id") long userId,
+                                             @RequestParam(name = "tags", required = false) Set<String> tags,
+                                             @RequestParam(name = "tagMode", defaultValue = "ANY")
+                                             TagMatchMode tagMode,
+                                             @RequestParam(name = "size", required = false) Integer size,
+                                             @RequestParam(name = "cursor", required = false) String cursor) {
+        if (size != null && size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be positive: " + size);
+        }
+        if (size != null || cursor != null) {
+            // постраничный вывод: курсор следующей страницы передаётся в заголовке ответа
+            KeysetPage<ItemDto> page = itemService.getItems(userId, tags, tagMode, cursor,
+                    size == null ? DEFAULT_PAGE_SIZE : size);
+            return page.toResponseEntity();
+        }
         if (tags == null || tags.isEmpty()) {
-            return itemService.getItems(userId);
+            return ResponseEntity.ok(itemService.getItems(userId));
         } else {
-            return itemService.getItems(userId, tags);
+            return ResponseEntity.ok(itemService.getItems(userId, tags, tagMode));
         }
     }
 
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream(@RequestHeader("X-Later-User-Id") long userId,
+                                        @RequestParam(name = "tags", required = false) Set<String> tags,
+                                        @RequestParam(name = "tagMode", defaultValue = "ANY")
+                                        TagMatchMode tagMode) {
+        // вся библиотека одним ответом, по элементу в строке, без накопления списка в памяти
+        return exporter.export(userId, tags, tagMode);
+    }
+
+    @GetMapping("/{itemId}")
+    public ItemDto getItem(@RequestHeader("X-Later-User-Id") long userId,
+                           @PathVariable(name = "itemId") long itemId) {
+        // позволяет опрашивать состояние элемента, сохранённого в режиме фонового разрешения
+        return itemService.getItem(userId, itemId);
+    }
+
     @PostMapping
     public ItemDto add(@RequestHeader("X-Later-User-Id") Long userId,
                        @RequestBody ItemDto item) {
         return itemService.addNewItem(userId, item);
     }
 
+    @PostMapping(path = "/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody addBatch(@RequestHeader("X-Later-User-Id") long userId,
+                                          @RequestBody List<ItemDto> items) {
+        return batchImporter.startImport(userId, items);
+    }
+
+    @PostMapping(path = "/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody addBatchNdjson(@RequestHeader("X-Later-User-Id") long userId,
+                                                InputStream body) throws IOException {
+        // по одной ссылке в строке
+        try (MappingIterator<ItemDto> lines = objectMapper.readerFor(ItemDto.class).readValues(body)) {
+            return batchImporter.startImport(userId, lines);
+        }
+    }
+
     @DeleteMapping("/{itemId}")
     public void deleteItem(@RequestHeader("X-Later-User-Id") long userId,
                            @PathVariable(name = "itemId") long itemId) {
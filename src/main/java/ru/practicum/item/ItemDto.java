@@ -23,4 +23,5 @@ public class ItemDto implements Serializable {
     private boolean hasVideo;
     private Instant dateResolved; // дата обращения к странице
     private Set<String> tags;
+    private ItemState state;
 }
@@ -0,0 +1,132 @@
+package ru.practicum.item;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.common.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Выгрузка всех элементов пользователя в формате NDJSON (по элементу в строке).
+ * Строки читаются курсором порциями по fetch-size и сразу пишутся в ответ,
+ * поэтому расход памяти не зависит от размера библиотеки.
+ */
+@Service
+class ItemExporter {
+    private static final String SELECT_ITEMS = "SELECT i.id, i.user_id, i.url, u.resolved_url, u.mime_type, u.title,"
+            + "       coalesce(u.has_image, false) AS has_image, coalesce(u.has_video, false) AS has_video,"
+            + "       i.date_resolved, i.state,"
+            + "       ARRAY(SELECT t.name FROM tags AS t WHERE t.item_id = i.id) AS tags "
+            + "FROM items AS i "
+            + "LEFT JOIN urls AS u ON u.id = i.url_id "
+            + "WHERE i.user_id = :userId ";
+    // тот же отбор по индексу item_tags, что и в постраничных запросах ItemRepository
+    private static final String BY_TAGS = "AND i.id IN (" + ItemRepository.ITEMS_BY_TAGS + ") ";
+    private static final String ORDER = "ORDER BY i.date_resolved DESC, i.id DESC";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter writer;
+    private final int fetchSize;
+
+    ItemExporter(DataSource dataSource,
+                 PlatformTransactionManager transactionManager,
+                 ObjectMapper objectMapper,
+                 @Value("${item-export.fetch-size:500}") int fetchSize) {
+        // отдельный шаблон: fetch size нужен только здесь
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+        // PostgreSQL читает курсором только внутри транзакции, иначе загружает всю выборку сразу
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.writer = objectMapper.writerFor(ItemDto.class);
+        this.fetchSize = fetchSize;
+    }
+
+    public StreamingResponseBody export(long userId, Set<String> tags, TagMatchMode mode) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        String sql;
+        if (tags == null || tags.isEmpty()) {
+            sql = SELECT_ITEMS + ORDER;
+        } else {
+            sql = SELECT_ITEMS + BY_TAGS + ORDER;
+            params.addValue("tags", tags)
+                    .addValue("requiredMatches", ItemTagIndex.requiredMatches(tags, mode));
+        }
+        // сразу после записи пользователя выгрузка, как и остальные чтения, идёт с основной базы
+        return ReplicaRoutingDataSource.withCurrentRouting(out -> write(sql, params, out));
+    }
+
+    private void write(String sql, MapSqlParameterSource params, OutputStream out) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                int[] written = {0};
+                jdbcTemplate.query(sql, params, rs -> {
+                    try {
+                        // writeValue(out, ...) закрыл бы поток ответа
+                        out.write(writer.writeValueAsBytes(mapRow(rs)));
+                        out.write('\n');
+                        // первые строки уходят клиенту, не дожидаясь конца выборки
+                        if (++written[0] % fetchSize == 0) {
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            });
+        } catch (UncheckedIOException e) {
+            // клиент закрыл соединение: транзакция уже откатилась и курсор закрыт
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    private static ItemDto mapRow(ResultSet rs) throws SQLException {
+        Timestamp dateResolved = rs.getTimestamp("date_resolved");
+        String state = rs.getString("state");
+        return new ItemDto(
+                rs.getLong("id"),
+                rs.getLong("user_id"),
+                rs.getString("url"),
+                rs.getString("resolved_url"),
+                rs.getString("mime_type"),
+                rs.getString("title"),
+                rs.getBoolean("has_image"),
+                rs.getBoolean("has_video"),
+                dateResolved == null ? null : dateResolved.toInstant(),
+                tagsOf(rs.getArray("tags")),
+                state == null ? null : ItemState.valueOf(state)
+        );
+    }
+
+    private static Set<String> tagsOf(Array array) throws SQLException {
+        if (array == null) {
+            return new HashSet<>();
+        }
+        try {
+            return new HashSet<>(Arrays.asList((String[]) array.getArray()));
+        } finally {
+            array.free();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.item;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemImportResultDto {
+    private int index; // порядковый номер ссылки во входных данных
+    private String url;
+    private Status status;
+    private Long itemId;
+    private String error;
+
+    public enum Status {
+        CREATED, DUPLICATE, FAILED
+    }
+}
@@ -5,9 +5,11 @@ import lombok.NoArgsConstructor;
 import ru.practicum.user.User;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.Set;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 final class ItemMapper {
@@ -15,38 +17,85 @@ final class ItemMapper {
         Item item = new Item();
         item.setUser(user);
         item.setUrl(itemDto.getUrl());
-        item.setResolvedUrl(itemDto.getResolvedUrl());
-        item.setMimeType(itemDto.getMimeType());
-        item.setHasImage(itemDto.isHasImage());
-        item.setHasVideo(itemDto.isHasVideo());
+        // метаданные страницы берутся только из разрешения ссылки, а не от клиента
         item.setDateResolved(itemDto.getDateResolved());
         item.setTags(itemDto.getTags());
         return item;
     }
 
     public static ItemDto mapToItemDto(Item item) {
+        return mapToItemDto(item, new HashSet<>(item.getTags()));
+    }
+
+    public static List<ItemDto> mapToItemDto(Iterable<Item> items) {
+        List<ItemDto> dtos = new ArrayList<>();
+        for (Item item : items) {
+            dtos.add(mapToItemDto(item));
+        }
+        return dtos;
+    }
+
+    /**
+     * Преобразует список, не обращаясь к ленивой коллекции тэгов каждого элемента:
+     * тэги уже загружены одним запросом и переданы в tagsByItemId.
+     */
+    public static List<ItemDto> mapToItemDto(Iterable<Item> items, Map<Long, Set<String>> tagsByItemId) {
+        List<ItemDto> dtos = new ArrayList<>();
+        for (Item item : items) {
+            dtos.add(mapToItemDto(item, tagsByItemId.getOrDefault(item.getId(), new HashSet<>())));
+        }
+        return dtos;
+    }
+
+    public static ItemDto mapToItemDto(ItemView item, Set<String> tags) {
+        return new ItemDto(
+                item.id(),
+                item.userId(),
+                item.url(),
+                item.resolvedUrl(),
+                item.mimeType(),
+                item.title(),
+                Boolean.TRUE.equals(item.hasImage()),
+                Boolean.TRUE.equals(item.hasVideo()),
+                item.dateResolved(),
+                tags,
+                item.state()
+        );
+    }
+
+    /**
+     * Преобразует элементы, выбранные проекцией; тэги загружены одним запросом и переданы в tagsByItemId.
+     */
+    public static List<ItemDto> mapToItemDto(List<ItemView> items, Map<Long, Set<String>> tagsByItemId) {
+        List<ItemDto> dtos = new ArrayList<>(items.size());
+        for (ItemView item : items) {
+            dtos.add(mapToItemDto(item, tagsByItemId.getOrDefault(item.id(), new HashSet<>())));
+        }
+        return dtos;
+    }
+
+    private static ItemDto mapToItemDto(Item item, Set<String> tags) {
+        ResolvedUrl resolved = item.getResolvedUrl();
         return new ItemDto(
                 item.getId(),
                 item.getUser().getId(),
                 item.getUrl(),
-                item.getResolvedUrl(),
-                item.getMimeType(),
-                item.getTitle(),
-                item.isHasImage(),
-                item.isHasVideo(),
+                resolved == null ? null : resolved.getUrl(),
+                resolved == null ? null : resolved.getMimeType(),
+                resolved == null ? null : resolved.getTitle(),
+                resolved != null && resolved.isHasImage(),
+                resolved != null && resolved.isHasVideo(),
                 item.getDateResolved(),
-                new HashSet<>(item.getTags())
+                tags,
+                item.getState()
         );
     }
 
-    public static List<ItemDto> mapToItemDto(Iterable<Item> items) {
-        return StreamSupport.stream(items.spliterator(), true)
-                .map(ItemMapper::mapToItemDto)
-                .toList();
-/*        List<ItemDto> dtos = new ArrayList<>();
-        for (Item item : items) {
-            dtos.add(mapToItemDto(item));
+    public static Map<Long, Set<String>> groupTags(List<ItemRepository.ItemTag> tags) {
+        Map<Long, Set<String>> tagsByItemId = new HashMap<>();
+        for (ItemRepository.ItemTag tag : tags) {
+            tagsByItemId.computeIfAbsent(tag.getItemId(), id -> new HashSet<>()).add(tag.getName());
         }
-        return dtos;*/
+        return tagsByItemId;
     }
 }
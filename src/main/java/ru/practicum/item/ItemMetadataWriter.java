@@ -0,0 +1,57 @@
+package ru.practicum.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Короткие транзакции записи результатов асинхронного разрешения ссылки.
+ * Соединение с БД берётся только на время обновления строки, а не на время обращения к сайту.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+class ItemMetadataWriter {
+    private final ItemRepository repository;
+    private final ResolvedUrlStore urlStore;
+    private final ResolvedUrlRepository urlRepository;
+    private final ItemTagIndex tagIndex;
+    private final ItemReadCache cache;
+
+    public void applyMetadata(long itemId, UrlMetadataRetriever.UrlMetadata urlMetadata) {
+        // элемент мог быть удалён, пока ссылка разрешалась
+        repository.findById(itemId).ifPresent(item -> {
+            // запись urls заблокирована до конца транзакции: проверка повтора не гоняется
+            // с другими сохранениями этой же страницы
+            long urlId = urlStore.upsert(urlMetadata);
+            long userId = item.getUser().getId();
+            cache.evictAfterCommit(userId);
+            Optional<Item> existing = repository.findByUserIdAndResolvedUrlId(userId, urlId);
+            if (existing.isPresent() && !existing.get().equals(item)) {
+                // пользователь уже сохранил эту страницу: тэги и заметки переходят к сохранённому элементу
+                Item target = existing.get();
+                target.getTags().addAll(item.getTags());
+                tagIndex.reindex(userId, target.getId(), target.getTags());
+                repository.moveNotes(itemId, target.getId());
+                repository.delete(item);
+                return;
+            }
+            item.setResolvedUrl(urlRepository.getReferenceById(urlId));
+            item.setDateResolved(urlMetadata.getDateResolved());
+            item.setState(ItemState.RESOLVED);
+        });
+    }
+
+    // вызывается и из afterCommit сохранения элемента, когда та транзакция уже завершена:
+    // без отдельной транзакции изменение состояния не было бы записано
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void markFailed(long itemId) {
+        repository.findById(itemId).ifPresent(item -> {
+            item.setState(ItemState.FAILED);
+            cache.evictAfterCommit(item.getUser().getId());
+        });
+    }
+}
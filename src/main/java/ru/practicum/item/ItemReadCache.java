@@ -0,0 +1,161 @@
+package ru.practicum.item;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.common.ReplicaRoutingDataSource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Кэш списков элементов пользователя: весь список и выборки по тэгам.
+ * Любая запись элементов пользователя сбрасывает его записи после фиксации транзакции;
+ * изменение общих метаданных страниц сбрасывает кэш целиком.
+ * Выборки по тэгам сгруппированы по пользователю, поэтому сброс пользователя - одно удаление по ключу.
+ */
+@Component
+class ItemReadCache {
+    // выборок по тэгам у одного пользователя; при переполнении группа начинается заново
+    private static final int MAX_TAG_QUERIES_PER_USER = 100;
+    // счётчики сбросов по группам пользователей: память не растёт с числом пользователей,
+    // а сброс одного пользователя мешает кэшировать только списки его группы
+    private static final int EVICTION_STRIPES = 1024;
+
+    private final Cache<Long, List<ItemDto>> byUser;
+    private final Cache<Long, ConcurrentMap<TagQuery, List<ItemDto>>> byTags;
+    // число сбросов: список, прочитанный до сброса, в кэш уже не кладётся
+    private final AtomicLongArray userEvictions = new AtomicLongArray(EVICTION_STRIPES);
+    private final AtomicLong allEvictions = new AtomicLong();
+    private final Counter tagHits;
+    private final Counter tagMisses;
+
+    ItemReadCache(MeterRegistry meterRegistry,
+                  @Value("${item-cache.maximum-size:10000}") long maximumSize,
+                  @Value("${item-cache.ttl-minutes:10}") long ttlMinutes) {
+        this.byUser = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        // срок отсчитывается от первой выборки пользователя: остальные живут не дольше ttl
+        this.byTags = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, byUser, "items.by-user");
+        // попадания считаются по выборкам, а не по группам пользователей, под теми же именами метрик
+        this.tagHits = Counter.builder("cache.gets")
+                .tag("cache", "items.by-tags")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.tagMisses = Counter.builder("cache.gets")
+                .tag("cache", "items.by-tags")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public List<ItemDto> getItems(long userId, Supplier<List<ItemDto>> loader) {
+        List<ItemDto> cached = byUser.getIfPresent(userId);
+        if (cached != null) {
+            return cached;
+        }
+        return load(userId, loader, loaded -> byUser.put(userId, loaded), () -> byUser.invalidate(userId));
+    }
+
+    public List<ItemDto> getItems(long userId, Set<String> tags, TagMatchMode mode,
+                                  Supplier<List<ItemDto>> loader) {
+        TagQuery query = new TagQuery(Set.copyOf(tags), mode);
+        ConcurrentMap<TagQuery, List<ItemDto>> queries = byTags.getIfPresent(userId);
+        List<ItemDto> cached = queries == null ? null : queries.get(query);
+        if (cached != null) {
+            tagHits.increment();
+            return cached;
+        }
+        tagMisses.increment();
+        return load(userId, loader,
+                loaded -> {
+                    ConcurrentMap<TagQuery, List<ItemDto>> group =
+                            byTags.asMap().computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+                    if (group.size() >= MAX_TAG_QUERIES_PER_USER) {
+                        group.clear();
+                    }
+                    group.put(query, loaded);
+                },
+                () -> byTags.invalidate(userId));
+    }
+
+    private List<ItemDto> load(long userId, Supplier<List<ItemDto>> loader,
+                               Consumer<List<ItemDto>> put, Runnable undo) {
+        long evictionsBefore = evictions(userId);
+        // промах загружается с основной базы: сброс после записи не защитил бы от списка,
+        // прочитанного с ещё не догнавшей её реплики
+        List<ItemDto> loaded = List.copyOf(ReplicaRoutingDataSource.onPrimary(loader));
+        if (evictions(userId) == evictionsBefore) {
+            put.accept(loaded);
+            // сброс мог пройти между проверкой и записью
+            if (evictions(userId) != evictionsBefore) {
+                undo.run();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Сбрасывает списки пользователя после фиксации текущей транзакции,
+     * чтобы одновременное чтение не вернуло в кэш старые данные.
+     */
+    public void evictAfterCommit(long userId) {
+        afterCommit(() -> {
+            userEvictions.incrementAndGet(stripe(userId));
+            byUser.invalidate(userId);
+            byTags.invalidate(userId);
+        });
+    }
+
+    public void evictAllAfterCommit() {
+        afterCommit(() -> {
+            allEvictions.incrementAndGet();
+            byUser.invalidateAll();
+            byTags.invalidateAll();
+        });
+    }
+
+    // оба счётчика только растут, поэтому сумма меняется при любом сбросе, касающемся пользователя
+    private long evictions(long userId) {
+        return userEvictions.get(stripe(userId)) + allEvictions.get();
+    }
+
+    private static int stripe(long userId) {
+        return Math.floorMod(Long.hashCode(userId), EVICTION_STRIPES);
+    }
+
+    private static void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+
+    private record TagQuery(Set<String> tags, TagMatchMode mode) {
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.item;
+
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Фоновое обновление устаревших метаданных ссылок.
+ * Страницы (urls), к которым обращались раньше max-age, обходятся по ключу (date_resolved, id) пакетами;
+ * записи urls уникальны по адресу, поэтому каждая страница проверяется один раз для всех пользователей.
+ * Запрос условный (ETag / Last-Modified), поэтому неизменившаяся страница обходится ответом 304 без тела.
+ * Частота проверок ограничена urls-per-sec.
+ */
+@Slf4j
+@Component
+class ItemRefresher {
+    // страницы, на которые больше не ссылается ни один элемент, не проверяем
+    private static final String SELECT_STALE = "SELECT u.id, u.resolved_url, u.date_resolved, u.etag, u.last_modified "
+            + "FROM urls AS u "
+            + "WHERE u.date_resolved < :staleBefore"
+            + "  AND (u.date_resolved, u.id) > (:lastDate, :lastId)"
+            + "  AND EXISTS (SELECT 1 FROM items AS i WHERE i.url_id = u.id) "
+            + "ORDER BY u.date_resolved, u.id "
+            + "LIMIT :limit";
+    private static final String TOUCH = "UPDATE urls SET date_resolved = :now WHERE id = :id";
+
+    private final UrlMetadataRetriever retriever;
+    private final ResolvedUrlStore urlStore;
+    private final ItemReadCache cache;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int batchSize;
+    private final RateLimiter throttle;
+
+    ItemRefresher(UrlMetadataRetriever retriever,
+                  ResolvedUrlStore urlStore,
+                  ItemReadCache cache,
+                  NamedParameterJdbcTemplate jdbcTemplate,
+                  TransactionTemplate transactionTemplate,
+                  @Value("${item-refresher.enabled:false}") boolean enabled,
+                  @Value("${item-refresher.max-age-hours:168}") long maxAgeHours,
+                  @Value("${item-refresher.batch-size:100}") int batchSize,
+                  @Value("${item-refresher.urls-per-sec:2}") double urlsPerSec) {
+        this.retriever = retriever;
+        this.urlStore = urlStore;
+        this.cache = cache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.maxAge = Duration.ofHours(maxAgeHours);
+        this.batchSize = batchSize;
+        this.throttle = RateLimiter.create(urlsPerSec);
+    }
+
+    @Scheduled(fixedDelayString = "${item-refresher.interval-ms:3600000}",
+            initialDelayString = "${item-refresher.initial-delay-ms:60000}")
+    public void refreshStale() {
+        if (!enabled) {
+            return;
+        }
+        Timestamp staleBefore = Timestamp.from(Instant.now().minus(maxAge));
+        Timestamp lastDate = new Timestamp(0);
+        long lastId = 0;
+        int unchanged = 0;
+        int changed = 0;
+        int failed = 0;
+        while (true) {
+            List<StaleUrl> batch = jdbcTemplate.query(SELECT_STALE, new MapSqlParameterSource()
+                            .addValue("staleBefore", staleBefore)
+                            .addValue("lastDate", lastDate)
+                            .addValue("lastId", lastId)
+                            .addValue("limit", batchSize),
+                    (rs, rowNum) -> new StaleUrl(rs.getLong("id"), rs.getString("resolved_url"),
+                            rs.getTimestamp("date_resolved"), rs.getString("etag"), rs.getString("last_modified")));
+            if (batch.isEmpty()) {
+                break;
+            }
+            StaleUrl last = batch.getLast();
+            lastDate = last.dateResolved();
+            lastId = last.id();
+
+            Timestamp now = Timestamp.from(Instant.now());
+            List<SqlParameterSource> touched = new ArrayList<>();
+            List<StaleUrl> updatedUrls = new ArrayList<>();
+            List<UrlMetadataRetriever.UrlMetadata> updated = new ArrayList<>();
+            for (StaleUrl url : batch) {
+                throttle.acquire();
+                try {
+                    Optional<UrlMetadataRetriever.UrlMetadata> metadata =
+                            retriever.revalidate(url.resolvedUrl(), url.etag(), url.lastModified());
+                    if (metadata.isEmpty()) {
+                        touched.add(new MapSqlParameterSource()
+                                .addValue("id", url.id())
+                                .addValue("now", now));
+                    } else {
+                        updatedUrls.add(url);
+                        updated.add(metadata.get());
+                    }
+                } catch (RuntimeException e) {
+                    // недоступная страница останется устаревшей и будет проверена при следующем обходе
+                    log.debug("Cannot refresh {}: {}", url.resolvedUrl(), e.getMessage());
+                    failed++;
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(TOUCH, touched.toArray(SqlParameterSource[]::new));
+                Map<String, Long> ids = urlStore.upsertAll(updated);
+                for (int i = 0; i < updated.size(); i++) {
+                    long newId = ids.get(updated.get(i).getResolvedUrl());
+                    if (newId != updatedUrls.get(i).id()) {
+                        // адрес стал перенаправлять на другую страницу: элементы переводятся на её запись,
+                        // по одной странице за раз - несколько старых адресов могут вести на одну новую
+                        urlStore.moveItems(updatedUrls.get(i).id(), newId);
+                    }
+                }
+                if (!updated.isEmpty()) {
+                    // метаданные страницы общие: изменились списки всех пользователей, сохранивших её
+                    cache.evictAllAfterCommit();
+                }
+            });
+            unchanged += touched.size();
+            changed += updated.size();
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("Stale urls refreshed: {} unchanged, {} changed, {} failed", unchanged, changed, failed);
+    }
+
+    private record StaleUrl(long id, String resolvedUrl, Timestamp dateResolved, String etag, String lastModified) {
+    }
+}
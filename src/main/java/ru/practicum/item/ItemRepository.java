@@ -1,15 +1,127 @@
 package ru.practicum.item;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.querydsl.QuerydslPredicateExecutor;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 public interface ItemRepository extends JpaRepository<Item, Long>, QuerydslPredicateExecutor<Item> {
 
-    List<Item> findByUserId(long userId);
+    // элементы для чтения: метаданные страницы выбираются тем же запросом, строки сразу
+    // создаются как ItemView, без сущностей в контексте постоянства
+    String ITEM_VIEW = "select new ru.practicum.item.ItemView(i.id, i.user.id, i.url, u.url, u.mimeType, u.title," +
+            " u.hasImage, u.hasVideo, i.dateResolved, i.state) " +
+            "from Item as i " +
+            "left join i.resolvedUrl as u ";
 
-    List<Item> findByResolvedUrl(String resolvedUrl);
+    @Query(ITEM_VIEW + "where i.user.id = ?1")
+    List<ItemView> findViewsByUserId(long userId);
+
+    @Query(ITEM_VIEW + "where i.user.id = ?1 and i.id = ?2")
+    Optional<ItemView> findViewByUserIdAndId(long userId, long itemId);
+
+    // элемент пользователя с той же страницей (после всех перенаправлений); пара уникальна
+    Optional<Item> findByUserIdAndResolvedUrlId(long userId, long resolvedUrlId);
+
+    // атомарная вставка: если пользователь уже сохранил эту страницу, строка не добавляется и id не возвращается
+    @Query(value = "INSERT INTO items (user_id, url, url_id, date_resolved, state) " +
+            "VALUES (:userId, :url, :urlId, :dateResolved, 'RESOLVED') " +
+            "ON CONFLICT (user_id, url_id) DO NOTHING " +
+            "RETURNING id", nativeQuery = true)
+    Optional<Long> insertResolvedIfAbsent(@Param("userId") long userId,
+                                          @Param("url") String url,
+                                          @Param("urlId") long urlId,
+                                          @Param("dateResolved") Instant dateResolved);
+
+    @Modifying
+    @Query(value = "UPDATE item_notes SET item_id = :toItemId WHERE item_id = :fromItemId", nativeQuery = true)
+    void moveNotes(@Param("fromItemId") long fromItemId, @Param("toItemId") long toItemId);
 
     void deleteByUserIdAndId(long userId, long itemId);
+
+    // постраничный вывод по ключу (dateResolved, id): без offset и без запроса count(*),
+    // каждая страница начинается с позиции в индексе items_user_date_resolved_idx
+    @Query(ITEM_VIEW +
+            "where i.user.id = ?1 " +
+            "order by i.dateResolved desc, i.id desc")
+    List<ItemView> findViewPageByUserId(long userId, Limit limit);
+
+    @Query(ITEM_VIEW +
+            "where i.user.id = ?1" +
+            "  and i.dateResolved <= ?2" +
+            "  and (i.dateResolved < ?2 or i.id < ?3) " +
+            "order by i.dateResolved desc, i.id desc")
+    List<ItemView> findViewPageByUserIdAfter(long userId, Instant dateResolved, long id, Limit limit);
+
+    // фильтрация по тэгам идёт по индексу item_tags: берутся элементы, у которых
+    // совпало не меньше :requiredMatches тэгов из запроса (1 - любой из тэгов, размер набора - все тэги);
+    // запросы возвращают id в нужном порядке, сами элементы загружает findViewsByIdIn
+    @Query(value = "SELECT i.id FROM items AS i " +
+            "WHERE i.user_id = :userId" +
+            "  AND i.id IN (" + ITEMS_BY_TAGS + ") " +
+            "ORDER BY i.date_resolved DESC, i.id DESC", nativeQuery = true)
+    List<Long> findIdsByUserIdAndTags(@Param("userId") long userId,
+                                      @Param("tags") Set<String> tags,
+                                      @Param("requiredMatches") int requiredMatches);
+
+    @Query(value = "SELECT i.id FROM items AS i " +
+            "WHERE i.user_id = :userId" +
+            "  AND i.id IN (" + ITEMS_BY_TAGS + ") " +
+            "ORDER BY i.date_resolved DESC, i.id DESC " +
+            "LIMIT :limit", nativeQuery = true)
+    List<Long> findIdPageByUserIdAndTags(@Param("userId") long userId,
+                                         @Param("tags") Set<String> tags,
+                                         @Param("requiredMatches") int requiredMatches,
+                                         @Param("limit") int limit);
+
+    @Query(value = "SELECT i.id FROM items AS i " +
+            "WHERE i.user_id = :userId" +
+            "  AND i.id IN (" + ITEMS_BY_TAGS + ")" +
+            "  AND i.date_resolved <= :dateResolved" +
+            "  AND (i.date_resolved < :dateResolved OR i.id < :id) " +
+            "ORDER BY i.date_resolved DESC, i.id DESC " +
+            "LIMIT :limit", nativeQuery = true)
+    List<Long> findIdPageByUserIdAndTagsAfter(@Param("userId") long userId,
+                                              @Param("tags") Set<String> tags,
+                                              @Param("requiredMatches") int requiredMatches,
+                                              @Param("dateResolved") Instant dateResolved,
+                                              @Param("id") long id,
+                                              @Param("limit") int limit);
+
+    // общий для запросов репозитория и выгрузки ItemExporter, поэтому параметры именованные
+    String ITEMS_BY_TAGS = "SELECT it.item_id FROM item_tags AS it " +
+            "JOIN tag_names AS tn ON tn.id = it.tag_id " +
+            "WHERE it.user_id = :userId AND tn.name IN (:tags) " +
+            "GROUP BY it.item_id " +
+            "HAVING count(*) >= :requiredMatches";
+
+    @Query(ITEM_VIEW + "where i.id in ?1")
+    List<ItemView> findViewsByIdIn(Collection<Long> itemIds);
+
+    // тэги загружаются одним запросом на весь список, а не по запросу на каждый элемент
+    @Query("select i.id as itemId, t as name " +
+            "from Item as i " +
+            "join i.tags as t " +
+            "where i.user.id = ?1")
+    List<ItemTag> findTagsByUserId(long userId);
+
+    @Query("select i.id as itemId, t as name " +
+            "from Item as i " +
+            "join i.tags as t " +
+            "where i.id in ?1")
+    List<ItemTag> findTagsByItemIdIn(Collection<Long> itemIds);
+
+    interface ItemTag {
+        Long getItemId();
+
+        String getName();
+    }
 }
\ No newline at end of file
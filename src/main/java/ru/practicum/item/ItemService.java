@@ -1,12 +1,18 @@
 package ru.practicum.item;
 
+import ru.practicum.common.KeysetPage;
+
 import java.util.List;
 import java.util.Set;
 
 interface ItemService {
     List<ItemDto> getItems(long userId);
 
-    List<ItemDto> getItems(long userId, Set<String> tags);
+    List<ItemDto> getItems(long userId, Set<String> tags, TagMatchMode mode);
+
+    KeysetPage<ItemDto> getItems(long userId, Set<String> tags, TagMatchMode mode, String cursor, int size);
+
+    ItemDto getItem(long userId, long itemId);
 
     ItemDto addNewItem(long userId, ItemDto itemDto);
 
@@ -1,73 +1,211 @@
 package ru.practicum.item;
 
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.google.common.collect.Lists;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.common.KeysetCursor;
+import ru.practicum.common.KeysetPage;
 import ru.practicum.user.User;
+import ru.practicum.user.UserCache;
 import ru.practicum.user.UserRepository;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 @Service
+@Timed("later.service")
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 class ItemServiceImpl implements ItemService {
+    // ограничение длины списка id в одном запросе
+    private static final int ID_QUERY_PARTITION = 1000;
+
     private final ItemRepository repository;
     private final UserRepository userRepository;
     private final UrlMetadataRetriever retriever;
+    private final AsyncItemResolver asyncResolver;
+    private final ItemTagIndex tagIndex;
+    private final ResolvedUrlStore urlStore;
+    private final UrlCanonicalizer canonicalizer;
+    private final ItemReadCache cache;
+    private final UserCache userCache;
+    private final TransactionTemplate transactionTemplate;
+
+    // чтение идёт через проекции ItemView: строки не становятся сущностями, Hibernate не хранит их снимки
+    // и не проверяет их на изменения при завершении транзакции
 
     @Override
     public List<ItemDto> getItems(long userId) {
-        List<Item> userItems = repository.findByUserId(userId);
-        return ItemMapper.mapToItemDto(userItems);
+        return cache.getItems(userId, () -> ItemMapper.mapToItemDto(repository.findViewsByUserId(userId),
+                ItemMapper.groupTags(repository.findTagsByUserId(userId))));
     }
 
     @Override
-    public List<ItemDto> getItems(long userId, Set<String> tags) {
-        BooleanExpression byUserId = QItem.item.user.id.eq(userId);
-        BooleanExpression byAnyTag = QItem.item.tags.any().in(tags);
-        Iterable<Item> foundItems = repository.findAll(byUserId.and(byAnyTag));
-        // а можно собрать в List с помощью Guava
-        //List<Item> itemList = Lists.newArrayList(repository.findAll(byUserId));
-        return ItemMapper.mapToItemDto(foundItems);
+    public List<ItemDto> getItems(long userId, Set<String> tags, TagMatchMode mode) {
+        return cache.getItems(userId, tags, mode, () -> {
+            List<Long> ids = repository.findIdsByUserIdAndTags(userId, tags,
+                    ItemTagIndex.requiredMatches(tags, mode));
+            List<ItemView> items = loadViews(ids);
+            return ItemMapper.mapToItemDto(items, loadTags(items));
+        });
     }
 
     @Override
-    @Transactional
-    public ItemDto addNewItem(long userId, ItemDto itemDto) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        Item item = ItemMapper.mapToItem(itemDto, user);
-        // получить метаданные по ссылке
-        var urlMetadata = retriever.retrieve(item.getUrl());
-        // если уже есть в базе, нужно только обновить
-        List<Item> existingItems = repository.findByResolvedUrl(urlMetadata.getResolvedUrl());
-        if (existingItems.isEmpty()) {
-            // В новый Item надо добавить отдельные поля интерфейса urlMetadata
-            item.setResolvedUrl(urlMetadata.getResolvedUrl());
-            item.setMimeType(urlMetadata.getMimeType());
-            item.setTitle(urlMetadata.getTitle());
-            item.setHasImage(urlMetadata.isHasImage());
-            item.setHasVideo(urlMetadata.isHasVideo());
-            item.setDateResolved(urlMetadata.getDateResolved());
+    public KeysetPage<ItemDto> getItems(long userId, Set<String> tags, TagMatchMode mode, String cursor, int size) {
+        // запрашиваем на один элемент больше, чтобы узнать, есть ли следующая страница
+        int limit = size + 1;
+        boolean byTags = tags != null && !tags.isEmpty();
+        final List<ItemView> found;
+        if (cursor == null) {
+            found = byTags
+                    ? loadViews(repository.findIdPageByUserIdAndTags(userId, tags,
+                            ItemTagIndex.requiredMatches(tags, mode), limit))
+                    : repository.findViewPageByUserId(userId, Limit.of(limit));
         } else {
-            if (existingItems.size() > 1) {
-                throw new RuntimeException("Нарушение целостности БД: уже существует более одной resolvedUrl "
-                        + urlMetadata.getResolvedUrl());
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            found = byTags
+                    ? loadViews(repository.findIdPageByUserIdAndTagsAfter(userId, tags,
+                            ItemTagIndex.requiredMatches(tags, mode), after.date(), after.id(), limit))
+                    : repository.findViewPageByUserIdAfter(userId, after.date(), after.id(), Limit.of(limit));
+        }
+        List<ItemView> page = found.size() > size ? found.subList(0, size) : found;
+        String nextCursor = null;
+        if (found.size() > size) {
+            ItemView last = page.getLast();
+            nextCursor = new KeysetCursor(last.dateResolved(), last.id()).encode();
+        }
+        return new KeysetPage<>(ItemMapper.mapToItemDto(page, loadTags(page)), nextCursor);
+    }
+
+    private Map<Long, Set<String>> loadTags(List<ItemView> items) {
+        List<Long> ids = items.stream().map(ItemView::id).toList();
+        List<ItemRepository.ItemTag> tags = new ArrayList<>();
+        for (List<Long> part : Lists.partition(ids, ID_QUERY_PARTITION)) {
+            tags.addAll(repository.findTagsByItemIdIn(part));
+        }
+        return ItemMapper.groupTags(tags);
+    }
+
+    /**
+     * Загружает элементы с метаданными, сохраняя порядок ids.
+     */
+    private List<ItemView> loadViews(List<Long> ids) {
+        Map<Long, ItemView> byId = new HashMap<>();
+        for (List<Long> part : Lists.partition(ids, ID_QUERY_PARTITION)) {
+            for (ItemView item : repository.findViewsByIdIn(part)) {
+                byId.put(item.id(), item);
             }
-            Item existingItem = existingItems.getFirst();
-            // добавить к существующим ссылкам тэги, которые пользователь указал для новой, если они есть
-            var tags = existingItem.getTags();
-            tags.addAll(item.getTags());
-            existingItem.setTags(tags);
-            item = existingItem;
         }
-        item = repository.save(item);
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public ItemDto getItem(long userId, long itemId) {
+        ItemView item = repository.findViewByUserIdAndId(userId, itemId)
+                .orElseThrow(() -> new RuntimeException(String.format("Item with id %d not found", itemId)));
+        return ItemMapper.mapToItemDto(item, loadTags(List.of(item)).getOrDefault(itemId, new HashSet<>()));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ItemDto addNewItem(long userId, ItemDto itemDto) {
+        if (itemDto.getUrl() == null || itemDto.getUrl().isBlank()) {
+            // ошибка запроса, а не сервера: канонизация и обращение к сайту без адреса невозможны
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "URL is missing");
+        }
+        if (!userCache.exists(userId)) {
+            throw new RuntimeException("User not found");
+        }
+        // страница уже сохранена (ссылка отличается от её адреса только метками отслеживания, www. и т.п.
+        // или ведёт на неё известным перенаправлением): метаданные берутся из urls без обращения к сайту
+        ItemDto known = transactionTemplate.execute(status -> saveKnown(userId, itemDto));
+        if (known != null) {
+            return known;
+        }
+        if (asyncResolver.isEnabled()) {
+            // сохраняем сразу, метаданные будут получены в фоне
+            return transactionTemplate.execute(status -> savePending(userId, itemDto, null));
+        }
+        // обращение к сайту идёт вне транзакции: пока ждём медленный хост, соединение с БД не занято
+        final UrlMetadataRetriever.UrlMetadata urlMetadata;
+        try {
+            urlMetadata = retriever.retrieve(itemDto.getUrl());
+        } catch (HostUnavailableException e) {
+            // хост отключён предохранителем: не ждём его, а разрешаем ссылку позже в фоне
+            return transactionTemplate.execute(status -> savePending(userId, itemDto, e.getRetryAfter()));
+        }
+        return transactionTemplate.execute(status -> saveResolved(userId, itemDto, urlMetadata));
+    }
+
+    /**
+     * Сохраняет элемент в состоянии PENDING; retryAfter - через сколько разрешать ссылку, null - сразу.
+     */
+    private ItemDto savePending(long userId, ItemDto itemDto, Duration retryAfter) {
+        // пользователь уже проверен по кэшу: для связи достаточно ссылки без запроса
+        Item item = ItemMapper.mapToItem(itemDto, userRepository.getReferenceById(userId));
+        // дата будет перезаписана датой фактического обращения к странице
+        item.setState(ItemState.PENDING);
+        item.setDateResolved(Instant.now());
+        // вставка с id из последовательности откладывается до flush, а индекс тэгов пишется через JDBC
+        // и ссылается на строку items
+        item = repository.saveAndFlush(item);
+        tagIndex.reindex(userId, item.getId(), item.getTags());
+        if (retryAfter == null) {
+            asyncResolver.submitAfterCommit(item.getId(), item.getUrl());
+        } else {
+            asyncResolver.deferAfterCommit(item.getId(), item.getUrl(), retryAfter);
+        }
+        cache.evictAfterCommit(userId);
         return ItemMapper.mapToItemDto(item);
     }
 
+    private ItemDto saveKnown(long userId, ItemDto itemDto) {
+        return urlStore.findByCanonicalUrl(canonicalizer.canonicalKey(itemDto.getUrl()))
+                .map(known -> saveForUrl(userId, itemDto, known.id(), known.dateResolved()))
+                .orElse(null);
+    }
+
+    private ItemDto saveResolved(long userId, ItemDto itemDto, UrlMetadataRetriever.UrlMetadata urlMetadata) {
+        // метаданные страницы общие для всех пользователей: одна запись urls на страницу.
+        // upsert блокирует эту запись до конца транзакции, поэтому одновременные сохранения
+        // одной страницы выполняются по очереди и видят элементы, сохранённые друг другом
+        long urlId = urlStore.upsert(urlMetadata);
+        return saveForUrl(userId, itemDto, urlId, urlMetadata.getDateResolved());
+    }
+
+    private ItemDto saveForUrl(long userId, ItemDto itemDto, long urlId, Instant dateResolved) {
+        // повтор ищем только среди элементов этого пользователя; уникальный индекс (user_id, url_id)
+        // не даст вставить второй элемент, даже если сохранение придёт в обход блокировки
+        repository.insertResolvedIfAbsent(userId, itemDto.getUrl(), urlId, dateResolved);
+        Item saved = repository.findByUserIdAndResolvedUrlId(userId, urlId)
+                .orElseThrow(() -> new RuntimeException("Item for the URL was not saved: " + itemDto.getUrl()));
+        // добавить к ссылке тэги, которые пользователь указал, если они есть
+        if (itemDto.getTags() != null) {
+            saved.getTags().addAll(itemDto.getTags());
+        }
+        saved = repository.save(saved);
+        tagIndex.reindex(userId, saved.getId(), saved.getTags());
+        cache.evictAfterCommit(userId);
+        return ItemMapper.mapToItemDto(saved);
+    }
+
     public ItemDto replaseTagOfItem(long userId, long itemId, String oldTag, String newTag) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -76,7 +214,10 @@ class ItemServiceImpl implements ItemService {
         if (item.getTags().contains(oldTag)) {
             item.getTags().remove(oldTag);
             item.getTags().add(newTag);
-            return ItemMapper.mapToItemDto(repository.save(item));
+            item = repository.save(item);
+            tagIndex.reindex(item.getUser().getId(), item.getId(), item.getTags());
+            cache.evictAfterCommit(item.getUser().getId());
+            return ItemMapper.mapToItemDto(item);
         } else {
             throw new RuntimeException(String.format("Item with id %d don't have tag %s", itemId, oldTag));
         }
@@ -86,5 +227,6 @@ class ItemServiceImpl implements ItemService {
     @Transactional
     public void deleteItem(long userId, long itemId) {
         repository.deleteByUserIdAndId(userId, itemId);
+        cache.evictAfterCommit(userId);
     }
 }
@@ -0,0 +1,5 @@
+package ru.practicum.item;
+
+public enum ItemState {
+    PENDING, RESOLVED, FAILED
+}
@@ -0,0 +1,79 @@
+package ru.practicum.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Поддержка словаря тэгов (tag_names) и индекса item_tags, по которому выполняется фильтрация по тэгам.
+ * Вызывается в той же транзакции, в которой меняются тэги элемента.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ItemTagIndex {
+    private static final String INSERT_NAME = "INSERT INTO tag_names (name) VALUES (:name) "
+            + "ON CONFLICT (name) DO NOTHING";
+    private static final String INSERT_ITEM_TAG = "INSERT INTO item_tags (user_id, tag_id, item_id) "
+            + "SELECT :userId, id, :itemId FROM tag_names WHERE name = :name "
+            + "ON CONFLICT DO NOTHING";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Приводит индекс элемента к заданному набору тэгов: удаляются только исчезнувшие тэги,
+     * добавляются только новые.
+     */
+    public void reindex(long userId, long itemId, Set<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM item_tags WHERE item_id = :itemId",
+                    new MapSqlParameterSource("itemId", itemId));
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM item_tags "
+                        + "WHERE item_id = :itemId "
+                        + "AND tag_id NOT IN (SELECT id FROM tag_names WHERE name IN (:tags))",
+                new MapSqlParameterSource()
+                        .addValue("itemId", itemId)
+                        .addValue("tags", tags));
+        addTags(userId, Map.of(itemId, tags));
+    }
+
+    /**
+     * Добавляет в индекс тэги сразу для многих элементов (пакетной вставкой).
+     */
+    public void addTags(long userId, Map<Long, Set<String>> tagsByItemId) {
+        List<SqlParameterSource> names = new ArrayList<>();
+        List<SqlParameterSource> itemTags = new ArrayList<>();
+        for (Map.Entry<Long, Set<String>> entry : tagsByItemId.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            for (String tag : entry.getValue()) {
+                names.add(new MapSqlParameterSource("name", tag));
+                itemTags.add(new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("itemId", entry.getKey())
+                        .addValue("name", tag));
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_NAME, names.toArray(SqlParameterSource[]::new));
+        jdbcTemplate.batchUpdate(INSERT_ITEM_TAG, itemTags.toArray(SqlParameterSource[]::new));
+    }
+
+    /**
+     * Сколько тэгов из запроса должно быть у элемента, чтобы он попал в выборку.
+     */
+    static int requiredMatches(Set<String> tags, TagMatchMode mode) {
+        return mode == TagMatchMode.ALL ? tags.size() : 1;
+    }
+}
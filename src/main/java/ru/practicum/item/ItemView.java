@@ -0,0 +1,12 @@
+package ru.practicum.item;
+
+import java.time.Instant;
+
+/**
+ * Элемент с метаданными страницы для чтения: создаётся конструктором прямо в запросе (select new),
+ * поэтому не попадает в контекст постоянства и не отслеживается Hibernate.
+ * hasImage и hasVideo - null, пока ссылка не разрешена.
+ */
+public record ItemView(Long id, Long userId, String url, String resolvedUrl, String mimeType, String title,
+                       Boolean hasImage, Boolean hasVideo, Instant dateResolved, ItemState state) {
+}
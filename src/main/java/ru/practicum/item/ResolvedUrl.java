@@ -0,0 +1,56 @@
+package ru.practicum.item;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Метаданные страницы, общие для всех пользователей, сохранивших ссылку на неё.
+ * Канонический адрес страницы уникален; элементы пользователей ссылаются на запись по url_id.
+ */
+@Entity
+@Table(name = "urls")
+@Getter
+@Setter
+@ToString
+public class ResolvedUrl {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "canonical_url", nullable = false, unique = true)
+    private String canonicalUrl;
+    // запись перенесена из items до канонизации адресов, и ключ ещё не пересчитан (UrlCanonicalBackfill)
+    @Column
+    private boolean canonicalPending;
+    @Column(name = "resolved_url", nullable = false)
+    private String url;
+    @Column
+    private String mimeType;
+    @Column
+    private String title;
+    @Column
+    private boolean hasImage;
+    @Column
+    private boolean hasVideo;
+    @Column
+    private Instant dateResolved; // дата последнего обращения к странице
+    @Column
+    private String etag;
+    @Column
+    private String lastModified;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ResolvedUrl)) return false;
+        return id != null && id.equals(((ResolvedUrl) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.item;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+interface ResolvedUrlRepository extends JpaRepository<ResolvedUrl, Long> {
+}
@@ -0,0 +1,147 @@
+package ru.practicum.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Запись общих метаданных ссылок в urls.
+ * INSERT ... ON CONFLICT по уникальному каноническому адресу: одновременные сохранения одной страницы
+ * (в том числе по адресам, отличающимся метками отслеживания, www. и т.п.) не создают дублей
+ * и не падают на нарушении уникальности, последняя запись обновляет метаданные.
+ * Обновлённая строка остаётся заблокированной до конца транзакции, так что сохранения одной страницы
+ * выполняются по очереди.
+ */
+@Repository
+@RequiredArgsConstructor
+class ResolvedUrlStore {
+    private static final String UPSERT = "INSERT INTO urls (canonical_url, resolved_url, mime_type, title, "
+            + "has_image, has_video, date_resolved, etag, last_modified) "
+            + "VALUES (:canonicalUrl, :resolvedUrl, :mimeType, :title, :hasImage, :hasVideo, :dateResolved, :etag, "
+            + ":lastModified) "
+            + "ON CONFLICT (canonical_url) DO UPDATE SET resolved_url = EXCLUDED.resolved_url,"
+            + "  mime_type = EXCLUDED.mime_type, title = EXCLUDED.title,"
+            + "  has_image = EXCLUDED.has_image, has_video = EXCLUDED.has_video,"
+            + "  date_resolved = EXCLUDED.date_resolved, etag = EXCLUDED.etag, last_modified = EXCLUDED.last_modified";
+
+    // перевод элементов на другую запись urls. Если у пользователя уже есть элемент с новой страницей,
+    // его элемент со старой сливается в него, как в ItemMetadataWriter: заметки и тэги переносятся,
+    // повтор удаляется (строки item_tags - каскадом), и только оставшиеся элементы меняют url_id
+    private static final String SURVIVOR = "JOIN items AS k ON k.user_id = d.user_id AND k.url_id = :toUrlId ";
+    private static final List<String> MOVE_ITEMS = List.of(
+            "UPDATE item_notes AS n SET item_id = k.id "
+                    + "FROM items AS d " + SURVIVOR
+                    + "WHERE n.item_id = d.id AND d.url_id = :fromUrlId",
+            "INSERT INTO tags (item_id, name) "
+                    + "SELECT DISTINCT k.id, t.name FROM tags AS t "
+                    + "JOIN items AS d ON d.id = t.item_id AND d.url_id = :fromUrlId " + SURVIVOR
+                    + "WHERE NOT EXISTS (SELECT 1 FROM tags AS e WHERE e.item_id = k.id AND e.name = t.name)",
+            "INSERT INTO item_tags (user_id, tag_id, item_id) "
+                    + "SELECT it.user_id, it.tag_id, k.id FROM item_tags AS it "
+                    + "JOIN items AS d ON d.id = it.item_id AND d.url_id = :fromUrlId " + SURVIVOR
+                    + "ON CONFLICT DO NOTHING",
+            "DELETE FROM tags AS t USING items AS d, items AS k "
+                    + "WHERE t.item_id = d.id AND d.url_id = :fromUrlId "
+                    + "  AND k.user_id = d.user_id AND k.url_id = :toUrlId",
+            "DELETE FROM items AS d USING items AS k "
+                    + "WHERE d.url_id = :fromUrlId AND k.user_id = d.user_id AND k.url_id = :toUrlId",
+            "UPDATE items SET url_id = :toUrlId WHERE url_id = :fromUrlId");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final UrlCanonicalizer canonicalizer;
+
+    /**
+     * Уже сохранённая страница с этим каноническим адресом.
+     */
+    public Optional<KnownUrl> findByCanonicalUrl(String canonicalUrl) {
+        return jdbcTemplate.query("SELECT id, date_resolved FROM urls WHERE canonical_url = :canonicalUrl",
+                        new MapSqlParameterSource("canonicalUrl", canonicalUrl),
+                        (rs, rowNum) -> {
+                            Timestamp dateResolved = rs.getTimestamp("date_resolved");
+                            return new KnownUrl(rs.getLong("id"),
+                                    dateResolved == null ? null : dateResolved.toInstant());
+                        })
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Сохраняет метаданные и возвращает id записи.
+     */
+    public long upsert(UrlMetadataRetriever.UrlMetadata metadata) {
+        return jdbcTemplate.queryForObject(UPSERT + " RETURNING id", params(metadata), Long.class);
+    }
+
+    /**
+     * Сохраняет метаданные пакетом и возвращает id записей по адресу после перенаправлений.
+     */
+    public Map<String, Long> upsertAll(Collection<UrlMetadataRetriever.UrlMetadata> metadata) {
+        // одна страница - одна строка пакета, иначе ON CONFLICT обновит строку дважды;
+        // строки блокируются в порядке адресов, чтобы одновременные пакеты не взаимоблокировались
+        Map<String, SqlParameterSource> byCanonicalUrl = new TreeMap<>();
+        Map<String, String> canonicalUrls = new HashMap<>();
+        for (UrlMetadataRetriever.UrlMetadata m : metadata) {
+            String canonicalUrl = canonicalizer.canonicalize(m.getResolvedUrl());
+            byCanonicalUrl.put(canonicalUrl, params(m, canonicalUrl));
+            canonicalUrls.put(m.getResolvedUrl(), canonicalUrl);
+        }
+        Map<String, Long> ids = new HashMap<>();
+        if (byCanonicalUrl.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.batchUpdate(UPSERT, byCanonicalUrl.values().toArray(SqlParameterSource[]::new));
+        Map<String, Long> idsByCanonicalUrl = new HashMap<>();
+        jdbcTemplate.query("SELECT id, canonical_url FROM urls WHERE canonical_url IN (:urls)",
+                new MapSqlParameterSource("urls", byCanonicalUrl.keySet()),
+                rs -> {
+                    idsByCanonicalUrl.put(rs.getString("canonical_url"), rs.getLong("id"));
+                });
+        canonicalUrls.forEach((resolvedUrl, canonicalUrl) ->
+                ids.put(resolvedUrl, idsByCanonicalUrl.get(canonicalUrl)));
+        return ids;
+    }
+
+    /**
+     * Переводит элементы со страницы fromUrlId на toUrlId, не нарушая уникальности (user_id, url_id).
+     * Вызывается в транзакции; кэш списков сбрасывает вызывающий.
+     */
+    public void moveItems(long fromUrlId, long toUrlId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromUrlId", fromUrlId)
+                .addValue("toUrlId", toUrlId);
+        for (String sql : MOVE_ITEMS) {
+            jdbcTemplate.update(sql, params);
+        }
+    }
+
+    private MapSqlParameterSource params(UrlMetadataRetriever.UrlMetadata metadata) {
+        return params(metadata, canonicalizer.canonicalize(metadata.getResolvedUrl()));
+    }
+
+    private static MapSqlParameterSource params(UrlMetadataRetriever.UrlMetadata metadata, String canonicalUrl) {
+        return new MapSqlParameterSource()
+                .addValue("canonicalUrl", canonicalUrl)
+                .addValue("resolvedUrl", metadata.getResolvedUrl())
+                .addValue("mimeType", metadata.getMimeType())
+                .addValue("title", metadata.getTitle())
+                .addValue("hasImage", metadata.isHasImage())
+                .addValue("hasVideo", metadata.isHasVideo())
+                .addValue("dateResolved", Timestamp.from(metadata.getDateResolved()))
+                .addValue("etag", metadata.getEtag())
+                .addValue("lastModified", metadata.getLastModified());
+    }
+
+    public record KnownUrl(long id, Instant dateResolved) {
+    }
+}
@@ -0,0 +1,41 @@
+package ru.practicum.item;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Получатель тела ответа, который сразу отказывается от тела:
+ * для картинок и видео достаточно заголовков, скачивать сам файл не нужно.
+ */
+final class SkipBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.cancel();
+        result.complete(null);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.complete(null);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(null);
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.item;
+
+public enum TagMatchMode {
+    ANY, // элемент отмечен хотя бы одним из тэгов
+    ALL  // элемент отмечен всеми тэгами
+}
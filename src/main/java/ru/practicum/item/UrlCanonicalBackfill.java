@@ -0,0 +1,134 @@
+package ru.practicum.item;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Канонические адреса записей urls, перенесённых из items до появления UrlCanonicalizer.
+ * schema.sql заполняет у них canonical_url прежним адресом после перенаправлений, который не нормализован,
+ * поэтому новое сохранение той же страницы не находило бы такую запись. Такие записи отмечены
+ * canonical_pending; при запуске они обходятся по id пакетами: ключ пересчитывается, а если страница
+ * с таким ключом уже есть, элементы переходят на неё (ResolvedUrlStore.moveItems) и старая запись удаляется.
+ * Обработанная запись теряет отметку, так что каждая пересчитывается один раз.
+ */
+@Slf4j
+@Component
+class UrlCanonicalBackfill {
+    private static final String SELECT_LEGACY = "SELECT id, canonical_url, resolved_url FROM urls "
+            + "WHERE canonical_pending AND id > :lastId "
+            + "ORDER BY id "
+            + "LIMIT :limit";
+    private static final String SET_CANONICAL = "UPDATE urls SET canonical_url = :canonicalUrl, "
+            + "canonical_pending = false WHERE id = :id";
+    private static final String MARK_DONE = "UPDATE urls SET canonical_pending = false WHERE id IN (:ids)";
+    private static final String DELETE_UNUSED = "DELETE FROM urls AS u WHERE u.id = :id "
+            + "AND NOT EXISTS (SELECT 1 FROM items AS i WHERE i.url_id = u.id)";
+
+    private final UrlCanonicalizer canonicalizer;
+    private final ResolvedUrlStore urlStore;
+    private final ItemReadCache cache;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    UrlCanonicalBackfill(UrlCanonicalizer canonicalizer,
+                         ResolvedUrlStore urlStore,
+                         ItemReadCache cache,
+                         NamedParameterJdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${url-canonical-backfill.enabled:true}") boolean enabled,
+                         @Value("${url-canonical-backfill.batch-size:500}") int batchSize) {
+        this.canonicalizer = canonicalizer;
+        this.urlStore = urlStore;
+        this.cache = cache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!enabled) {
+            return;
+        }
+        long lastId = 0;
+        int updated = 0;
+        int merged = 0;
+        int failed = 0;
+        while (true) {
+            List<LegacyUrl> batch = jdbcTemplate.query(SELECT_LEGACY, new MapSqlParameterSource()
+                            .addValue("lastId", lastId)
+                            .addValue("limit", batchSize),
+                    (rs, rowNum) -> new LegacyUrl(rs.getLong("id"), rs.getString("canonical_url"),
+                            rs.getString("resolved_url")));
+            if (batch.isEmpty()) {
+                break;
+            }
+            lastId = batch.getLast().id();
+            List<Long> unchanged = new ArrayList<>();
+            for (LegacyUrl url : batch) {
+                String canonicalUrl = canonicalizer.canonicalize(url.resolvedUrl());
+                if (canonicalUrl.equals(url.canonicalUrl())) {
+                    unchanged.add(url.id());
+                    continue;
+                }
+                try {
+                    // каждая запись в своей транзакции: ошибка одной не откатывает уже перенесённые
+                    if (transactionTemplate.execute(status -> apply(url.id(), canonicalUrl))) {
+                        merged++;
+                    } else {
+                        updated++;
+                    }
+                } catch (DataIntegrityViolationException e) {
+                    // страницу с этим ключом только что сохранили: запись осталась отмеченной
+                    // и будет слита при следующем запуске
+                    log.debug("Cannot set canonical url {} for url {}: {}", canonicalUrl, url.id(), e.getMessage());
+                    failed++;
+                }
+            }
+            if (!unchanged.isEmpty()) {
+                jdbcTemplate.update(MARK_DONE, new MapSqlParameterSource("ids", unchanged));
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        if (updated + merged + failed > 0) {
+            log.info("Canonical urls backfilled: {} updated, {} merged, {} failed", updated, merged, failed);
+        }
+    }
+
+    /**
+     * Возвращает true, если запись слита с уже существующей страницей.
+     */
+    private boolean apply(long id, String canonicalUrl) {
+        Optional<ResolvedUrlStore.KnownUrl> existing = urlStore.findByCanonicalUrl(canonicalUrl);
+        if (existing.isEmpty()) {
+            jdbcTemplate.update(SET_CANONICAL, new MapSqlParameterSource()
+                    .addValue("canonicalUrl", canonicalUrl)
+                    .addValue("id", id));
+            return false;
+        }
+        urlStore.moveItems(id, existing.get().id());
+        jdbcTemplate.update(DELETE_UNUSED, new MapSqlParameterSource("id", id));
+        // элементы пользователей перешли на другую страницу
+        cache.evictAllAfterCommit();
+        return true;
+    }
+
+    private record LegacyUrl(long id, String canonicalUrl, String resolvedUrl) {
+    }
+}
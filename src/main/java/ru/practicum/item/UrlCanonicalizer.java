@@ -0,0 +1,185 @@
+package ru.practicum.item;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Канонический адрес страницы - ключ, по которому одинаковые страницы совпадают в urls.
+ * Кроме нормализации (схема и хост в нижнем регистре, без порта по умолчанию и фрагмента) отбрасываются
+ * параметры отслеживания (utm_* и т.п.), префикс www. и завершающий слэш, параметры сортируются - по настройкам.
+ * Перенаправления уже разрешённых ссылок запоминаются: короткая ссылка сразу даёт канонический адрес
+ * страницы, на которую она ведёт, без обращения к сайту.
+ */
+@Component
+class UrlCanonicalizer {
+    // карта хранит сразу конечный адрес, переходы по ней нужны, только если конечная страница потом переехала
+    private static final int MAX_HOPS = 10;
+
+    private final Set<String> dropParams = new HashSet<>();
+    private final List<String> dropParamPrefixes = new ArrayList<>();
+    private final boolean stripWww;
+    private final boolean stripTrailingSlash;
+    private final boolean sortParams;
+    // канонический адрес ссылки -> канонический адрес страницы после перенаправлений
+    private final Cache<String, String> redirects;
+
+    UrlCanonicalizer(MeterRegistry meterRegistry,
+                     @Value("${url-canonicalizer.drop-params:utm_*,fbclid,gclid,yclid,mc_cid,mc_eid,_openstat}")
+                     List<String> dropParams,
+                     @Value("${url-canonicalizer.strip-www:true}") boolean stripWww,
+                     @Value("${url-canonicalizer.strip-trailing-slash:true}") boolean stripTrailingSlash,
+                     @Value("${url-canonicalizer.sort-params:true}") boolean sortParams,
+                     @Value("${url-canonicalizer.redirects.maximum-size:100000}") long redirectsSize,
+                     @Value("${url-canonicalizer.redirects.ttl-hours:24}") long redirectsTtlHours) {
+        for (String param : dropParams) {
+            String name = param.trim().toLowerCase(Locale.ROOT);
+            if (name.endsWith("*")) {
+                this.dropParamPrefixes.add(name.substring(0, name.length() - 1));
+            } else if (!name.isEmpty()) {
+                this.dropParams.add(name);
+            }
+        }
+        this.stripWww = stripWww;
+        this.stripTrailingSlash = stripTrailingSlash;
+        this.sortParams = sortParams;
+        this.redirects = CacheBuilder.newBuilder()
+                .maximumSize(redirectsSize)
+                .expireAfterWrite(Duration.ofHours(redirectsTtlHours))
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, redirects, "url.canonical.redirects");
+    }
+
+    /**
+     * Канонический адрес по правилам, без учёта перенаправлений. Адрес, который не разбирается как URI,
+     * возвращается как есть.
+     */
+    public String canonicalize(String url) {
+        try {
+            return canonicalize(new URI(url.trim()));
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    String canonicalize(URI uri) {
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return uri.toString();
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (stripWww && host.startsWith("www.") && host.indexOf('.', 4) > 0) {
+            host = host.substring(4);
+        }
+        int port = uri.getPort();
+        if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            port = -1;
+        }
+        StringBuilder sb = new StringBuilder(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            sb.append(uri.getRawUserInfo()).append('@');
+        }
+        sb.append(host);
+        if (port != -1) {
+            sb.append(':').append(port);
+        }
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (stripTrailingSlash) {
+            int end = path.length();
+            while (end > 1 && path.charAt(end - 1) == '/') {
+                end--;
+            }
+            path = path.substring(0, end);
+        }
+        sb.append(path);
+        String query = canonicalQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            sb.append('?').append(query);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Канонический адрес страницы, на которую ведёт ссылка, если её перенаправления уже известны;
+     * иначе - канонический адрес самой ссылки.
+     */
+    public String canonicalKey(String url) {
+        String key = canonicalize(url);
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            String target = redirects.getIfPresent(key);
+            if (target == null || target.equals(key)) {
+                break;
+            }
+            key = target;
+        }
+        return key;
+    }
+
+    /**
+     * Запоминает, куда привела ссылка: normalUrl полученных метаданных - адрес, который запрашивался.
+     */
+    public void remember(UrlMetadataRetriever.UrlMetadata metadata) {
+        if (metadata.getNormalUrl() == null || metadata.getResolvedUrl() == null) {
+            return;
+        }
+        String from = canonicalize(metadata.getNormalUrl());
+        String to = canonicalize(metadata.getResolvedUrl());
+        if (from.equals(to)) {
+            // страница могла вернуться на прежний адрес
+            redirects.invalidate(from);
+        } else {
+            redirects.put(from, to);
+        }
+    }
+
+    private String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (!param.isEmpty() && !isDropped(param)) {
+                params.add(param);
+            }
+        }
+        if (sortParams) {
+            // сортировка устойчивая: повторы одного параметра сохраняют порядок значений
+            params.sort((a, b) -> paramName(a).compareTo(paramName(b)));
+        }
+        return String.join("&", params);
+    }
+
+    private boolean isDropped(String param) {
+        String name = paramName(param).toLowerCase(Locale.ROOT);
+        if (dropParams.contains(name)) {
+            return true;
+        }
+        for (String prefix : dropParamPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String paramName(String param) {
+        int eq = param.indexOf('=');
+        return eq < 0 ? param : param.substring(0, eq);
+    }
+}
@@ -0,0 +1,464 @@
+package ru.practicum.item;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Обращения к сайтам за метаданными ссылок.
+ * На каждый хост действуют ограничение частоты запросов (token bucket), ограничение числа
+ * одновременных запросов и таймаут запроса. Временные ошибки (обрыв соединения, таймаут,
+ * 429 и 502-504) повторяются ограниченное число раз с экспоненциальной задержкой.
+ * Хост, который подряд отвечает ошибками или слишком медленно, отключается предохранителем
+ * ({@link HostCircuitBreaker}): запросы к нему сразу завершаются {@link HostUnavailableException},
+ * не занимая потоки и соединения на время таймаута.
+ * Ожидание места на хосте и паузы между повторами не занимают потоки: запрос ставится в очередь хоста
+ * и продолжается, когда место освободится.
+ * По каждому хосту собирается статистика, она доступна в /actuator/fetcher.
+ */
+@Slf4j
+@Component
+class UrlFetcher {
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final long acquireTimeoutMs;
+    private final int maxAttempts;
+    private final long backoffInitialMs;
+    private final long backoffMaxMs;
+    private final LoadingCache<String, HostState> hosts;
+    private final MeterRegistry meterRegistry;
+    private final Counter breakerRejections;
+
+    UrlFetcher(MeterRegistry meterRegistry,
+               @Value("${url-fetcher.connect-timeout-sec:10}") int connectTimeoutSec,
+               @Value("${url-fetcher.request-timeout-sec:30}") int requestTimeoutSec,
+               @Value("${url-fetcher.per-host.requests-per-sec:5}") double requestsPerSec,
+               @Value("${url-fetcher.per-host.concurrency:4}") int concurrency,
+               @Value("${url-fetcher.per-host.acquire-timeout-sec:30}") int acquireTimeoutSec,
+               @Value("${url-fetcher.per-host.max-hosts:10000}") long maxHosts,
+               @Value("${url-fetcher.retry.max-attempts:3}") int maxAttempts,
+               @Value("${url-fetcher.retry.backoff-initial-ms:200}") long backoffInitialMs,
+               @Value("${url-fetcher.retry.backoff-max-ms:5000}") long backoffMaxMs,
+               @Value("${url-fetcher.breaker.window-size:20}") int breakerWindowSize,
+               @Value("${url-fetcher.breaker.minimum-calls:10}") int breakerMinimumCalls,
+               @Value("${url-fetcher.breaker.failure-rate-threshold:0.5}") double breakerFailureRate,
+               @Value("${url-fetcher.breaker.slow-call-sec:10}") int breakerSlowCallSec,
+               @Value("${url-fetcher.breaker.open-sec:30}") int breakerOpenSec,
+               @Value("${url-fetcher.breaker.half-open-trials:3}") int breakerHalfOpenTrials) {
+        this.meterRegistry = meterRegistry;
+        this.client = HttpClient.newBuilder()
+                // HTTP/2, если сервер его поддерживает: несколько запросов к хосту идут по одному соединению
+                .version(HttpClient.Version.HTTP_2)
+                // перенаправления обрабатываются в UrlMetadataRetrieverImpl
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSec))
+                .build();
+        this.requestTimeout = Duration.ofSeconds(requestTimeoutSec);
+        this.acquireTimeoutMs = TimeUnit.SECONDS.toMillis(acquireTimeoutSec);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffInitialMs = backoffInitialMs;
+        this.backoffMaxMs = backoffMaxMs;
+        HostCircuitBreaker.Settings breakerSettings = new HostCircuitBreaker.Settings(breakerWindowSize,
+                breakerMinimumCalls, breakerFailureRate, Duration.ofSeconds(breakerSlowCallSec),
+                Duration.ofSeconds(breakerOpenSec), breakerHalfOpenTrials);
+        this.hosts = CacheBuilder.newBuilder()
+                .maximumSize(maxHosts)
+                // состояние хоста, к которому давно не обращались, не нужно
+                .expireAfterAccess(Duration.ofHours(1))
+                .build(CacheLoader.from(host -> new HostState(requestsPerSec,
+                        new Semaphore(concurrency), new HostCircuitBreaker(breakerSettings))));
+        meterRegistry.gauge("url.fetch.hosts", hosts, cache -> cache.size());
+        for (HostCircuitBreaker.State breakerState : HostCircuitBreaker.State.values()) {
+            Gauge.builder("url.fetch.breakers", hosts, cache -> countBreakers(cache, breakerState))
+                    .description("Число хостов в каждом состоянии предохранителя")
+                    .tag("state", breakerState.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("url.fetch.in-flight", hosts,
+                        cache -> sumOverHosts(cache, host -> host.concurrency - host.permits.availablePermits()))
+                .description("Запросы к сайтам, выполняющиеся сейчас")
+                .register(meterRegistry);
+        Gauge.builder("url.fetch.waiting", hosts, cache -> sumOverHosts(cache, host -> host.waiters.size()))
+                .description("Запросы, ожидающие свободного места на своём хосте")
+                .register(meterRegistry);
+        this.breakerRejections = Counter.builder("url.fetch.breaker.rejected")
+                .description("Запросы, отклонённые разомкнутым предохранителем хоста")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Отправляет запрос с учётом ограничений хоста. Ответ с кодом ошибки возвращается как есть,
+     * если он не временный или попытки исчерпаны; исключение - только если ответа не было вовсе.
+     * Поток ждёт результата {@link #sendAsync}.
+     */
+    public <T> HttpResponse<T> send(URI url, String method, HttpResponse.BodyHandler<T> bodyHandler) {
+        return send(url, method, Map.of(), bodyHandler);
+    }
+
+    public <T> HttpResponse<T> send(URI url, String method, Map<String, String> headers,
+                                    HttpResponse.BodyHandler<T> bodyHandler) {
+        return CompletableFutures.await(sendAsync(url, method, headers, bodyHandler), url);
+    }
+
+    /**
+     * То же, что {@link #send}, но без блокировки потоков: ожидание места на хосте, паузы между повторами
+     * и сам запрос выполняются по готовности. Отмена или таймаут (orTimeout) результата прерывают
+     * ожидание и запрос к сайту, который выполняется в этот момент.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(URI url, String method, Map<String, String> headers,
+                                                            HttpResponse.BodyHandler<T> bodyHandler) {
+        String host = url.getHost() == null ? "" : url.getHost().toLowerCase(Locale.ROOT);
+        HostState state = hosts.getUnchecked(host);
+        final HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(url)
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .timeout(requestTimeout);
+            headers.forEach(builder::header);
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!breakerAllows(state)) {
+            return CompletableFuture.failedFuture(new HostUnavailableException(host, state.breaker.getRetryAfter()));
+        }
+        return new Exchange<>(url, method, host, state, request, bodyHandler).start();
+    }
+
+    /**
+     * Статистика по хостам для конечной точки actuator.
+     */
+    public Map<String, HostStats> stats() {
+        return hosts.asMap().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().snapshot()));
+    }
+
+    private boolean breakerAllows(HostState state) {
+        if (state.breaker.tryAcquire()) {
+            return true;
+        }
+        breakerRejections.increment();
+        return false;
+    }
+
+    private static double countBreakers(LoadingCache<String, HostState> cache, HostCircuitBreaker.State state) {
+        return cache.asMap().values().stream()
+                .filter(host -> host.breaker.getState() == state)
+                .count();
+    }
+
+    private static double sumOverHosts(LoadingCache<String, HostState> cache, ToIntFunction<HostState> value) {
+        return cache.asMap().values().stream()
+                .mapToInt(value)
+                .sum();
+    }
+
+    private long backoff(int attempt, HttpResponse<?> response) {
+        long delay = Math.min(backoffMaxMs, backoffInitialMs << (attempt - 1));
+        if (response != null) {
+            // сервер сам сообщил, когда можно повторить (указан в секундах)
+            Long retryAfter = response.headers()
+                    .firstValue(HttpHeaders.RETRY_AFTER)
+                    .map(UrlFetcher::parseSeconds)
+                    .orElse(null);
+            if (retryAfter != null) {
+                return Math.min(backoffMaxMs, TimeUnit.SECONDS.toMillis(retryAfter));
+            }
+        }
+        // разброс, чтобы повторы от разных запросов не приходили одновременно
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static Long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private Timer timer(String outcome) {
+        // хост в теги не попадает: число хостов не ограничено
+        return Timer.builder("url.fetch")
+                .description("Время одного HTTP-запроса за метаданными ссылки")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public record HostStats(long requests, long errors, long retries, long rejected, int inFlight,
+                            double meanLatencyMs, double maxLatencyMs, String lastError,
+                            HostCircuitBreaker.State breaker) {
+    }
+
+    /**
+     * Один запрос со всеми повторами: место на хосте, разрешение частоты, отправка, пауза перед повтором.
+     * Каждый шаг запускается завершением предыдущего.
+     */
+    private final class Exchange<T> {
+        private final URI url;
+        private final String method;
+        private final String host;
+        private final HostState state;
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<T> bodyHandler;
+        private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private final AtomicBoolean permitHeld = new AtomicBoolean();
+        // ожидание места на хосте или запрос к сайту, который выполняется сейчас
+        private volatile CompletableFuture<?> current;
+
+        private Exchange(URI url, String method, String host, HostState state, HttpRequest request,
+                         HttpResponse.BodyHandler<T> bodyHandler) {
+            this.url = url;
+            this.method = method;
+            this.host = host;
+            this.state = state;
+            this.request = request;
+            this.bodyHandler = bodyHandler;
+        }
+
+        private CompletableFuture<HttpResponse<T>> start() {
+            // результат отменён или завершён по таймауту - прерываем текущий шаг
+            result.whenComplete((response, error) -> {
+                CompletableFuture<?> step = current;
+                if (error != null && step != null) {
+                    step.cancel(true);
+                }
+            });
+            CompletableFuture<Void> permit = state.acquirePermit();
+            current = permit;
+            permit.orTimeout(acquireTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    state.breaker.release();
+                    if (CompletableFutures.unwrap(error) instanceof TimeoutException) {
+                        state.rejected.increment();
+                        fail(new RuntimeException("Too many concurrent requests to the host: " + host));
+                    } else {
+                        fail(error);
+                    }
+                    return;
+                }
+                permitHeld.set(true);
+                nextAttempt(1);
+            });
+            return result;
+        }
+
+        private void nextAttempt(int attempt) {
+            // каждая попытка, в том числе повтор, расходует разрешение частоты
+            long waitNanos = state.reserveSlot(TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs));
+            if (waitNanos < 0) {
+                state.breaker.release();
+                state.rejected.increment();
+                fail(new RuntimeException("Too many requests to the host: " + host));
+            } else if (waitNanos == 0) {
+                sendAttempt(attempt);
+            } else {
+                CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> sendAttempt(attempt));
+            }
+        }
+
+        private void sendAttempt(int attempt) {
+            if (result.isDone()) {
+                // результат отменён, пока запрос ждал своей очереди
+                state.breaker.release();
+                finish();
+                return;
+            }
+            long started = System.nanoTime();
+            CompletableFuture<HttpResponse<T>> call = client.sendAsync(request, bodyHandler);
+            current = call;
+            if (result.isDone()) {
+                call.cancel(true);
+            }
+            call.whenComplete((response, error) -> onResponse(attempt, started, response, error));
+        }
+
+        private void onResponse(int attempt, long started, HttpResponse<T> response, Throwable error) {
+            Throwable cause = error == null ? null : CompletableFutures.unwrap(error);
+            if (cause != null && !(cause instanceof IOException)) {
+                // запрос отменён или ошибка не связана с сайтом
+                state.breaker.release();
+                fail(cause);
+                return;
+            }
+            IOException failure = (IOException) cause;
+            long elapsed = System.nanoTime() - started;
+            // для предохранителя 4xx и 429 - не признак неисправности хоста
+            state.breaker.onResult(failure != null || response.statusCode() >= 500, elapsed);
+            boolean retryable = failure != null || isRetryable(response.statusCode());
+            state.record(elapsed, failure != null || response.statusCode() >= 400,
+                    failure != null ? failure.toString() : "HTTP " + response.statusCode());
+            timer(failure != null ? "io-error" : String.valueOf(response.statusCode() / 100) + "xx")
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+
+            if (!retryable || attempt == maxAttempts) {
+                if (failure != null) {
+                    fail(new RuntimeException("Cannot retrieve data from the URL: " + url, failure));
+                } else {
+                    // место на хосте освобождается до завершения: продолжения result видят его свободным
+                    finish();
+                    result.complete(response);
+                }
+                return;
+            }
+            state.retries.increment();
+            long delay = backoff(attempt, response);
+            log.debug("Retrying {} {} in {} ms after attempt {}", method, url, delay, attempt);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.isDone()) {
+                    finish();
+                } else if (!breakerAllows(state)) {
+                    // после ошибки предохранитель мог разомкнуться
+                    fail(new HostUnavailableException(host, state.breaker.getRetryAfter()));
+                } else {
+                    nextAttempt(attempt + 1);
+                }
+            });
+        }
+
+        private void fail(Throwable error) {
+            finish();
+            result.completeExceptionally(error);
+        }
+
+        private void finish() {
+            if (permitHeld.compareAndSet(true, false)) {
+                state.releasePermit();
+            }
+        }
+    }
+
+    private static final class HostState {
+        // неиспользованные разрешения частоты копятся не дольше секунды, как у RateLimiter
+        private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final Semaphore permits;
+        // запросы, ожидающие места на хосте, в порядке поступления
+        private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+        private final long slotNanos;
+        // время, с которого можно отправить следующий запрос
+        private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+        private final HostCircuitBreaker breaker;
+        private final int concurrency;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final AtomicReference<String> lastError = new AtomicReference<>();
+
+        private HostState(double requestsPerSec, Semaphore permits, HostCircuitBreaker breaker) {
+            this.slotNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSec);
+            this.permits = permits;
+            this.breaker = breaker;
+            this.concurrency = permits.availablePermits();
+        }
+
+        /**
+         * Место на хосте: сразу, если есть свободное, иначе в порядке очереди, когда освободится.
+         */
+        private CompletableFuture<Void> acquirePermit() {
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            // отказавшийся ожидающий не должен оставаться в очереди
+            waiter.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    waiters.remove(waiter);
+                }
+            });
+            dispatch();
+            return waiter;
+        }
+
+        private void releasePermit() {
+            permits.release();
+            dispatch();
+        }
+
+        private void dispatch() {
+            while (!waiters.isEmpty() && permits.tryAcquire()) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                if (waiter == null || !waiter.complete(null)) {
+                    // очередь опустела или ожидающий уже отказался (таймаут, отмена)
+                    permits.release();
+                }
+            }
+        }
+
+        /**
+         * Резервирует разрешение частоты запросов: сколько наносекунд ждать до отправки,
+         * или -1, если ждать пришлось бы дольше timeoutNanos.
+         */
+        private long reserveSlot(long timeoutNanos) {
+            while (true) {
+                long now = System.nanoTime();
+                long next = nextSlotNanos.get();
+                long slot = Math.max(next, now - BURST_NANOS);
+                long wait = slot - now;
+                if (wait > timeoutNanos) {
+                    return -1;
+                }
+                if (nextSlotNanos.compareAndSet(next, slot + slotNanos)) {
+                    return Math.max(0, wait);
+                }
+            }
+        }
+
+        private void record(long nanos, boolean error, String outcome) {
+            requests.increment();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulate(nanos);
+            if (error) {
+                errors.increment();
+                lastError.set(outcome);
+            }
+        }
+
+        private HostStats snapshot() {
+            long count = requests.sum();
+            return new HostStats(count, errors.sum(), retries.sum(), rejected.sum(),
+                    concurrency - permits.availablePermits(),
+                    count == 0 ? 0 : totalNanos.get() / 1e6 / count,
+                    maxNanos.get() / 1e6,
+                    lastError.get(),
+                    breaker.getState());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/fetcher - задержки и ошибки обращений к сайтам по хостам,
+ * /actuator/fetcher/{host} - по одному хосту.
+ */
+@Component
+@Endpoint(id = "fetcher")
+@RequiredArgsConstructor
+public class UrlFetcherEndpoint {
+    private final UrlFetcher fetcher;
+
+    @ReadOperation
+    public Map<String, UrlFetcher.HostStats> hosts() {
+        return fetcher.stats();
+    }
+
+    @ReadOperation
+    public UrlFetcher.HostStats host(@Selector String host) {
+        return fetcher.stats().get(host);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum.item;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Кэш уже полученных метаданных ссылок.
+ * Ключи - нормализованный адрес, который прислал пользователь, и адрес после всех перенаправлений.
+ * Ошибки сервера (4xx/5xx) тоже кэшируются, но на меньшее время.
+ */
+@Component
+class UrlMetadataCache {
+    private final Cache<String, UrlMetadataRetriever.UrlMetadata> byNormalUrl;
+    private final Cache<String, UrlMetadataRetriever.UrlMetadata> byResolvedUrl;
+    private final Cache<String, FailedRetrieval> failures;
+
+    UrlMetadataCache(MeterRegistry meterRegistry,
+                     @Value("${url-metadata-cache.maximum-size:10000}") long maximumSize,
+                     @Value("${url-metadata-cache.ttl-minutes:60}") long ttlMinutes,
+                     @Value("${url-metadata-cache.negative-ttl-sec:60}") long negativeTtlSec) {
+        this.byNormalUrl = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.byResolvedUrl = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.failures = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSec))
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, byNormalUrl, "url.metadata.by-normal-url");
+        GuavaCacheMetrics.monitor(meterRegistry, byResolvedUrl, "url.metadata.by-resolved-url");
+        GuavaCacheMetrics.monitor(meterRegistry, failures, "url.metadata.failures");
+    }
+
+    /**
+     * Приводит адрес к виду, в котором одинаковые ссылки совпадают как строки:
+     * схема и хост в нижнем регистре, без порта по умолчанию и без фрагмента.
+     */
+    static String normalize(URI uri) {
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return uri.toString();
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            port = -1;
+        }
+        StringBuilder sb = new StringBuilder(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            sb.append(uri.getRawUserInfo()).append('@');
+        }
+        sb.append(uri.getHost().toLowerCase(Locale.ROOT));
+        if (port != -1) {
+            sb.append(':').append(port);
+        }
+        sb.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            sb.append('?').append(uri.getRawQuery());
+        }
+        return sb.toString();
+    }
+
+    public Optional<UrlMetadataRetriever.UrlMetadata> getByNormalUrl(String normalUrl) {
+        return Optional.ofNullable(byNormalUrl.getIfPresent(normalUrl));
+    }
+
+    public Optional<UrlMetadataRetriever.UrlMetadata> getByResolvedUrl(String resolvedUrl) {
+        return Optional.ofNullable(byResolvedUrl.getIfPresent(resolvedUrl));
+    }
+
+    public void put(String normalUrl, UrlMetadataRetriever.UrlMetadata urlMetadata) {
+        byNormalUrl.put(normalUrl, urlMetadata);
+        byResolvedUrl.put(urlMetadata.getResolvedUrl(), urlMetadata);
+    }
+
+    /**
+     * Повторно выбрасывает ошибку, если недавно сервер уже ответил на этот адрес кодом ошибки.
+     */
+    public void throwIfFailedRecently(String normalUrl) {
+        FailedRetrieval failed = failures.getIfPresent(normalUrl);
+        if (failed != null) {
+            throw new UrlStatusException(failed.statusCode(), failed.message());
+        }
+    }
+
+    public void putFailure(String normalUrl, UrlStatusException e) {
+        failures.put(normalUrl, new FailedRetrieval(e.getStatusCode(), e.getMessage()));
+    }
+
+    private record FailedRetrieval(int statusCode, String message) {
+    }
+}
@@ -2,10 +2,27 @@ package ru.practicum.item;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface UrlMetadataRetriever {
     public UrlMetadata retrieve(String urlString);
 
+    /**
+     * Получает метаданные без блокировки потока: HEAD, GET и разбор страницы выполняются по готовности
+     * ответов. Отмена future или таймаут (orTimeout) прерывают запрос к сайту, который выполняется
+     * в этот момент. {@link #retrieve} ждёт результата этого метода.
+     */
+    CompletableFuture<UrlMetadata> retrieveAsync(String urlString);
+
+    /**
+     * Повторно получает метаданные уже разрешённой ссылки условным запросом (If-None-Match / If-Modified-Since),
+     * минуя кэш. Пустой результат - страница не изменилась (304).
+     */
+    Optional<UrlMetadata> revalidate(String resolvedUrl, String etag, String lastModified);
+
+    CompletableFuture<Optional<UrlMetadata>> revalidateAsync(String resolvedUrl, String etag, String lastModified);
+
     interface UrlMetadata {
         String getNormalUrl();
         String getResolvedUrl();
@@ -14,6 +31,9 @@ public interface UrlMetadataRetriever {
         boolean isHasImage();
         boolean isHasVideo();
         Instant getDateResolved();
+        // валидаторы для условных запросов при обновлении метаданных, могут отсутствовать
+        String getEtag();
+        String getLastModified();
     }
 
 }
@@ -1,162 +1,493 @@
 package ru.practicum.item;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Builder;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
-
 import org.springframework.beans.factory.annotation.Value;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
 import org.springframework.util.MimeType;
 
-import java.io.File;
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Component
 public class UrlMetadataRetrieverImpl implements UrlMetadataRetriever {
-    private String resolvedUrl;
-    private MimeTypes mimeType;
-    private String title;
-    private Boolean hasImage;
-    private Boolean hasVideo;
-    private LocalDate dateResolved;
-
-    // объект для непосредственно обменов
-    private final HttpClient client;
-    // нужен конструктор для инициализации клиента
-    UrlMetadataRetrieverImpl(@Value("${url-metadata-retriever.read_timeout-sec:120}") int readTimeout) {
-        this.client =  HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .connectTimeout(Duration.ofSeconds(readTimeout))
-                .build();
+    private static final int MAX_REDIRECTS = 10;
+
+    // запросы к сайтам с ограничениями по хостам и повторами
+    private final UrlFetcher fetcher;
+    // кэш уже полученных ответов, чтобы не ходить повторно на популярные адреса
+    private final UrlMetadataCache cache;
+    // сколько байт страницы читать в поисках заголовка и тэгов img/video
+    private final long maxBodyBytes;
+    // какой запрос отправлять первым для каждого хоста
+    private final HostProbeStrategies probeStrategies;
+    // запоминает, куда ведут ссылки, чтобы повторы находились без обращения к сайту
+    private final UrlCanonicalizer canonicalizer;
+    // адреса, которые сейчас разрешаются, по нормализованному адресу
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    UrlMetadataRetrieverImpl(MeterRegistry meterRegistry,
+                             @Value("${url-metadata-retriever.max-body-bytes:1048576}") long maxBodyBytes,
+                             UrlFetcher fetcher,
+                             UrlMetadataCache cache,
+                             HostProbeStrategies probeStrategies,
+                             UrlCanonicalizer canonicalizer) {
+        this.meterRegistry = meterRegistry;
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.maxBodyBytes = maxBodyBytes;
+        this.probeStrategies = probeStrategies;
+        this.canonicalizer = canonicalizer;
     }
 
 
     @Override
     public UrlMetadata retrieve(String urlString) {
+        return CompletableFutures.await(retrieveAsync(urlString), urlString);
+    }
+
+    @Override
+    public CompletableFuture<UrlMetadata> retrieveAsync(String urlString) {
+        Timer.Sample sample = Timer.start();
         final URI uri;
         try {
-            uri = new URI(urlString);
+            uri = parse(urlString);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String normalUrl = UrlMetadataCache.normalize(uri);
+        Optional<UrlMetadata> cached = cache.getByNormalUrl(normalUrl);
+        if (cached.isPresent()) {
+            sample.stop(retrievalTimer("cached", cached.get().getMimeType()));
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        try {
+            cache.throwIfFailedRecently(normalUrl);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // одновременные запросы одного адреса ждут результата первого, а не ходят на сайт каждый сам
+        while (true) {
+            InFlight own = new InFlight();
+            InFlight running = inFlight.putIfAbsent(normalUrl, own);
+            if (running == null) {
+                // вызывающий получает future до начала запроса: первый ожидающий уже учтён
+                CompletableFuture<UrlMetadata> result = own.join();
+                start(uri, normalUrl, own);
+                return timed(result, sample, "success");
+            }
+            CompletableFuture<UrlMetadata> joined = running.join();
+            if (joined != null) {
+                return timed(joined, sample, "coalesced");
+            }
+            // все ожидавшие этот адрес отказались, запрос отменяется: начинаем новый
+            inFlight.remove(normalUrl, running);
+        }
+    }
+
+    /**
+     * Время получения записывается, когда завершится future вызывающего; сам future возвращается,
+     * чтобы его отмена доходила до запроса.
+     */
+    private CompletableFuture<UrlMetadata> timed(CompletableFuture<UrlMetadata> result, Timer.Sample sample,
+                                                 String outcome) {
+        result.whenComplete((metadata, error) -> sample.stop(error == null
+                ? retrievalTimer(outcome, metadata.getMimeType())
+                : retrievalTimer("error", null)));
+        return result;
+    }
+
+    private void start(URI uri, String normalUrl, InFlight own) {
+        Pending pending = new Pending();
+        // все ожидавшие отказались - запрос к сайту больше не нужен
+        own.shared.whenComplete((result, error) -> {
+            if (error != null) {
+                pending.cancel();
+            }
+            inFlight.remove(normalUrl, own);
+        });
+        resolve(uri, normalUrl, pending).whenComplete((result, error) -> {
+            if (error == null) {
+                // результат уже в кэше, следующие запросы возьмут его оттуда
+                cache.put(normalUrl, result);
+                canonicalizer.remember(result);
+                own.shared.complete(result);
+                return;
+            }
+            Throwable cause = CompletableFutures.unwrap(error);
+            if (cause instanceof UrlStatusException statusException) {
+                cache.putFailure(normalUrl, statusException);
+            }
+            // ожидающие получают ту же ошибку, что и запрос, который ходил на сайт
+            own.shared.completeExceptionally(cause);
+        });
+    }
+
+    @Override
+    public Optional<UrlMetadata> revalidate(String resolvedUrl, String etag, String lastModified) {
+        return CompletableFutures.await(revalidateAsync(resolvedUrl, etag, lastModified), resolvedUrl);
+    }
+
+    @Override
+    public CompletableFuture<Optional<UrlMetadata>> revalidateAsync(String resolvedUrl, String etag,
+                                                                    String lastModified) {
+        final URI uri;
+        try {
+            uri = parse(resolvedUrl);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String normalUrl = UrlMetadataCache.normalize(uri);
+        Map<String, String> conditions = new HashMap<>();
+        if (etag != null) {
+            conditions.put(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            conditions.put(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        Pending pending = new Pending();
+        CompletableFuture<Optional<UrlMetadata>> result = connect(uri, "GET", conditions, probeHandler(), pending)
+                .thenCompose(resp -> {
+                    if (resp.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+                        // страница не изменилась, тело сервер не отправлял
+                        return CompletableFuture.completedFuture(Optional.empty());
+                    }
+                    Optional<URI> location = redirectLocation(resp);
+                    CompletableFuture<UrlMetadata> metadata = location.isPresent()
+                            // адрес стал перенаправлять: проходим цепочку заново
+                            ? resolve(location.get(), normalUrl, pending)
+                            : handleResponse(resp, normalUrl, pending);
+                    return metadata.thenApply(changed -> {
+                        cache.put(normalUrl, changed);
+                        // страница могла переехать: прежний адрес теперь ведёт на новый
+                        canonicalizer.remember(changed);
+                        return Optional.of(changed);
+                    });
+                });
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                pending.cancel();
+            }
+        });
+        return result;
+    }
+
+    private static URI parse(String urlString) {
+        try {
+            return new URI(urlString);
         } catch (URISyntaxException e) {
             // Если адрес не соответствует правилам URI адресов, то генерируем исключение.
             throw new RuntimeException("The URL is malformed: " + urlString, e);
         }
+    }
 
-        HttpResponse<Void> resp = connect(uri, "HEAD", HttpResponse.BodyHandlers.discarding());
+    private CompletableFuture<UrlMetadata> resolve(URI uri, String normalUrl, Pending pending) {
+        HostProbeStrategies.Strategy strategy = probeStrategies.strategyFor(uri.getHost());
+        // для хостов с тяжёлым содержимым сначала HEAD, для остальных сразу GET
+        boolean headFirst = strategy == HostProbeStrategies.Strategy.HEAD_THEN_GET;
+        Timer.Sample sample = Timer.start();
+        return follow(uri, uri, normalUrl, headFirst, 0, pending)
+                .whenComplete((result, error) -> sample.stop(probeStrategies.timer(strategy)));
+    }
 
-        String contentType = resp.headers()
-                .firstValue(HttpHeaders.CONTENT_TYPE)
-                .orElse("*");
+    /**
+     * Один шаг цепочки перенаправлений; перенаправления обрабатываем сами, чтобы на каждом шаге проверять кэш.
+     */
+    private CompletableFuture<UrlMetadata> follow(URI uri, URI current, String normalUrl, boolean headFirst,
+                                                  int redirects, Pending pending) {
+        // цепочка перенаправлений могла привести на уже известный адрес - тело страницы не запрашиваем
+        Optional<UrlMetadata> cached = cache.getByResolvedUrl(current.toString());
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(UrlMetadataImpl.from(cached.get()).toBuilder()
+                    .normalUrl(normalUrl)
+                    .build());
+        }
+        CompletableFuture<HttpResponse<HtmlHeadScanner>> response = headFirst
+                ? connect(current, "HEAD", Map.of(), HttpResponse.BodyHandlers.<HtmlHeadScanner>replacing(null), pending)
+                : connect(current, "GET", Map.of(), probeHandler(), pending);
+        return response.thenCompose(resp -> {
+            Optional<URI> location = redirectLocation(resp);
+            if (location.isEmpty()) {
+                return handleResponse(resp, normalUrl, pending);
+            }
+            if (redirects == MAX_REDIRECTS) {
+                throw new RuntimeException("Too many redirects for the URL: " + uri);
+            }
+            return follow(uri, location.get(), normalUrl, headFirst, redirects + 1, pending);
+        });
+    }
 
-        MediaType mediaType = MediaType.parseMediaType(contentType);
+    private CompletableFuture<UrlMetadata> handleResponse(HttpResponse<HtmlHeadScanner> resp, String normalUrl,
+                                                          Pending pending) {
+        URI resolvedUri = resp.uri();
+        MediaType mediaType = mediaTypeOf(resp.headers());
+        boolean isText = mediaType.isCompatibleWith(MimeType.valueOf("text/*"));
+        probeStrategies.remember(resolvedUri.getHost(), isText);
 
-        final UrlMetadataImpl result;
+        final CompletableFuture<UrlMetadataImpl> result;
 
-        if (mediaType.isCompatibleWith(MimeType.valueOf("text/*"))) {
-            result = handleText(resp.uri());
+        if (isText) {
+            // после GET страница уже прочитана, после HEAD нужен ещё один запрос
+            CompletableFuture<HtmlHeadScanner> head = resp.body() != null
+                    ? CompletableFuture.completedFuture(resp.body())
+                    : connect(resolvedUri, "GET", Map.of(), probeHandler(), pending).thenApply(HttpResponse::body);
+            result = head.thenApply(scanner -> {
+                if (scanner == null) {
+                    throw new RuntimeException("Cannot read the page at the URL: " + resolvedUri);
+                }
+                return handleText(scanner);
+            });
         } else if (mediaType.isCompatibleWith(MimeType.valueOf("image/*"))) {
-            result = handleImage(resp.uri());
+            result = CompletableFuture.completedFuture(handleImage(resolvedUri));
         } else if (mediaType.isCompatibleWith(MimeType.valueOf("video/*"))) {
-            result = handleVideo(resp.uri());
+            result = CompletableFuture.completedFuture(handleVideo(resolvedUri));
         } else {
-            throw new RuntimeException("The content type [" + mediaType
-                    + "] at the specified URL is not supported.");
+            return CompletableFuture.failedFuture(new RuntimeException("The content type [" + mediaType
+                    + "] at the specified URL is not supported."));
         }
 
-        return result.toBuilder()
-                .normalUrl(urlString)
-                .resolvedUrl(resp.uri().toString())
+        return result.thenApply(metadata -> metadata.toBuilder()
+                .normalUrl(normalUrl)
+                .resolvedUrl(resolvedUri.toString())
                 .mimeType(mediaType.getType())
                 .dateResolved(Instant.now())
-                .build();
+                .etag(resp.headers().firstValue(HttpHeaders.ETAG).orElse(null))
+                .lastModified(resp.headers().firstValue(HttpHeaders.LAST_MODIFIED).orElse(null))
+                .build());
     }
 
-    private <T> HttpResponse<T> connect(URI url,
-                                        String method,
-                                        HttpResponse.BodyHandler<T> responseBodyHandler) {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(url)
-                .method(method, HttpRequest.BodyPublishers.noBody())
-                .build();
+    private HttpResponse.BodyHandler<HtmlHeadScanner> probeHandler() {
+        return responseInfo -> {
+            int statusCode = responseInfo.statusCode();
+            if (isRedirect(statusCode)) {
+                // тело перенаправления короткое: дочитываем, чтобы соединение можно было переиспользовать
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            if (statusCode < 400 && mediaTypeOf(responseInfo.headers()).isCompatibleWith(MimeType.valueOf("text/*"))) {
+                return new HtmlHeadBodySubscriber(HtmlHeadBodySubscriber.charsetOf(responseInfo.headers()),
+                        maxBodyBytes);
+            }
+            // картинку, видео или страницу с ошибкой не скачиваем
+            return new SkipBodySubscriber<>();
+        };
+    }
+
+    private static MediaType mediaTypeOf(java.net.http.HttpHeaders headers) {
+        String contentType = headers
+                .firstValue(HttpHeaders.CONTENT_TYPE)
+                .orElse("*");
+        return MediaType.parseMediaType(contentType);
+    }
 
-        final HttpResponse<T> response;
+    private static String mimeTypeOf(java.net.http.HttpHeaders headers) {
         try {
-            response = client.send(request, responseBodyHandler);
-        } catch (IOException e) {
-            throw new RuntimeException("Cannot retrieve data from the URL: " + url, e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Cannot get the metadata for url: " + url
-                    + " because the thread was interrupted.", e);
+            return mediaTypeOf(headers).getType();
+        } catch (InvalidMediaTypeException e) {
+            return null;
         }
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303
+                || statusCode == 307 || statusCode == 308;
+    }
+
+    private static Optional<URI> redirectLocation(HttpResponse<?> resp) {
+        if (!isRedirect(resp.statusCode())) {
+            return Optional.empty();
+        }
+        return resp.headers()
+                .firstValue(HttpHeaders.LOCATION)
+                .map(location -> resp.uri().resolve(location));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> connect(URI url,
+                                                           String method,
+                                                           Map<String, String> headers,
+                                                           HttpResponse.BodyHandler<T> responseBodyHandler,
+                                                           Pending pending) {
+        // таймауты, ограничения хоста и повторы временных ошибок - в UrlFetcher
+        Timer.Sample sample = Timer.start();
+        return pending.track(fetcher.sendAsync(url, method, headers, responseBodyHandler))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        sample.stop(phaseTimer(method, "error", null));
+                        throw CompletableFutures.propagate(error);
+                    }
+                    // для GET сюда входит и потоковый разбор страницы, он же отдельно измеряется как parse
+                    sample.stop(phaseTimer(method, outcomeOf(response.statusCode()),
+                            isRedirect(response.statusCode()) ? null : mimeTypeOf(response.headers())));
+                    checkStatus(response, url);
+                    return response;
+                });
+    }
 
+    private static void checkStatus(HttpResponse<?> response, URI url) {
         HttpStatus status = HttpStatus.resolve(response.statusCode());
         if(status == null) {
             throw new RuntimeException("The server returned an unknown status code: " + response.statusCode());
         }
 
         if(status.equals(HttpStatus.UNAUTHORIZED) || status.equals(HttpStatus.FORBIDDEN)) {
-            throw new RuntimeException("There is no access to the resource at the specified URL: " + url);
+            throw new UrlStatusException(status.value(),
+                    "There is no access to the resource at the specified URL: " + url);
         }
         if(status.isError()) {
-            throw new RuntimeException("Cannot get the data on the item because the server returned an error."
+            throw new UrlStatusException(status.value(),"Cannot get the data on the item because the server returned an error."
                     + "Response status: " + status);
         }
-
-        return response;
     }
 
-    private UrlMetadataImpl handleText(URI url) {
-        // заполняем поля для случая, когда страница содержит текст (в том числе html)
-        // дополнительный запрос выясняет, есть ли изображения и видео
-        HttpResponse<String> resp = connect(url, "GET", HttpResponse.BodyHandlers.ofString());
-
-        // воспользуемся библиотекой Jsoup для парсинга содержимого
-        Document doc = Jsoup.parse(resp.body());
-
-        // ищем в полученном документе html-тэги, говорящие, что он
-        // содержит видео или аудио информацию
-        Elements imgElements = doc.getElementsByTag("img");
-        Elements videoElements = doc.getElementsByTag("video");
-
-        // добавляем полученные данные в ответ. В том числе находим заголовок
-        // полученной страницы.
+    private UrlMetadataImpl handleText(HtmlHeadScanner head) {
+        // заполняем поля для случая, когда страница содержит текст (в том числе html);
+        // страница разобрана потоково, без построения DOM
+        phaseTimer("parse", "success", "text").record(head.getParseNanos(), TimeUnit.NANOSECONDS);
         return UrlMetadataImpl.builder()
-                .title(doc.title())
-                .hasImage(!imgElements.isEmpty())
-                .hasVideo(!videoElements.isEmpty())
+                .title(head.getTitle())
+                .hasImage(head.isHasImage())
+                .hasVideo(head.isHasVideo())
                 .build();
     }
 
     private UrlMetadataImpl handleVideo(URI url) {
         // заполняем поля для случая, когда страница содержит видео
-        String name = new File(url).getName();
         return UrlMetadataImpl.builder()
-                .title(name)
+                .title(fileName(url))
                 .hasVideo(true)
                 .build();
     }
 
     private UrlMetadataImpl handleImage(URI url) {
         // заполняем поля для случая, когда страница содержит изображение
-        String name = new File(url).getName();
         return UrlMetadataImpl.builder()
-                .title(name)
+                .title(fileName(url))
                 .hasImage(true)
                 .build();
     }
 
+    // теги только из ограниченных наборов значений: адрес и хост в них не попадают
+    private Timer retrievalTimer(String outcome, String mimeType) {
+        return Timer.builder("url.metadata.retrieve")
+                .description("Время получения метаданных ссылки целиком")
+                .tag("outcome", outcome)
+                .tag("mime", mimeClass(mimeType))
+                .register(meterRegistry);
+    }
+
+    private Timer phaseTimer(String phase, String outcome, String mimeType) {
+        return Timer.builder("url.metadata.phase")
+                .description("Время отдельного шага получения метаданных: HEAD, GET или разбор страницы")
+                .tag("phase", phase.toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .tag("mime", mimeClass(mimeType))
+                .register(meterRegistry);
+    }
+
+    private static String outcomeOf(int statusCode) {
+        if (statusCode == HttpStatus.NOT_MODIFIED.value()) {
+            return "not_modified";
+        }
+        if (isRedirect(statusCode)) {
+            return "redirect";
+        }
+        if (statusCode >= 500) {
+            return "server_error";
+        }
+        return statusCode >= 400 ? "client_error" : "success";
+    }
+
+    private static String mimeClass(String mimeType) {
+        if (mimeType == null) {
+            return "none";
+        }
+        return switch (mimeType.toLowerCase(Locale.ROOT)) {
+            case "text", "image", "video" -> mimeType.toLowerCase(Locale.ROOT);
+            default -> "other";
+        };
+    }
+
+    private static String fileName(URI url) {
+        // new File(url) здесь не подходит: он принимает только адреса со схемой file
+        String path = url.getPath();
+        return path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Получение метаданных одного адреса, которого ждут один или несколько вызывающих.
+     * Каждый получает свой future: его отмена или таймаут не затрагивают остальных,
+     * а запрос к сайту отменяется, только когда отказались все.
+     */
+    private static final class InFlight {
+        private final CompletableFuture<UrlMetadata> shared = new CompletableFuture<>();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        /**
+         * Future для ещё одного ожидающего; null - все уже отказались и запрос отменяется.
+         */
+        private CompletableFuture<UrlMetadata> join() {
+            int count;
+            do {
+                count = waiting.get();
+                if (count < 0) {
+                    return null;
+                }
+            } while (!waiting.compareAndSet(count, count + 1));
+            CompletableFuture<UrlMetadata> own = shared.copy();
+            own.whenComplete((result, error) -> {
+                // -1 - запрос отменён, новые ожидающие к нему не присоединяются
+                if (error != null && !shared.isDone() && waiting.decrementAndGet() == 0
+                        && waiting.compareAndSet(0, -1)) {
+                    shared.cancel(true);
+                }
+            });
+            return own;
+        }
+    }
+
+    /**
+     * Запрос к сайту, который выполняется сейчас для одного получения метаданных; отменяется вместе с ним.
+     */
+    private static final class Pending {
+        private volatile CompletableFuture<?> current;
+        private volatile boolean cancelled;
+
+        private <T> CompletableFuture<T> track(CompletableFuture<T> step) {
+            current = step;
+            if (cancelled) {
+                step.cancel(true);
+            }
+            return step;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            CompletableFuture<?> step = current;
+            if (step != null) {
+                step.cancel(true);
+            }
+        }
+    }
+
     @lombok.Value
     @Builder(toBuilder = true)
     static class UrlMetadataImpl implements UrlMetadata {
@@ -167,5 +498,21 @@ public class UrlMetadataRetrieverImpl implements UrlMetadataRetriever {
         boolean hasImage;
         boolean hasVideo;
         Instant dateResolved;
+        String etag;
+        String lastModified;
+
+        static UrlMetadataImpl from(UrlMetadata urlMetadata) {
+            return UrlMetadataImpl.builder()
+                    .normalUrl(urlMetadata.getNormalUrl())
+                    .resolvedUrl(urlMetadata.getResolvedUrl())
+                    .mimeType(urlMetadata.getMimeType())
+                    .title(urlMetadata.getTitle())
+                    .hasImage(urlMetadata.isHasImage())
+                    .hasVideo(urlMetadata.isHasVideo())
+                    .dateResolved(urlMetadata.getDateResolved())
+                    .etag(urlMetadata.getEtag())
+                    .lastModified(urlMetadata.getLastModified())
+                    .build();
+        }
     }
 }
@@ -0,0 +1,16 @@
+package ru.practicum.item;
+
+import lombok.Getter;
+
+/**
+ * Сервер по ссылке ответил кодом ошибки (4xx/5xx).
+ */
+@Getter
+public class UrlStatusException extends RuntimeException {
+    private final int statusCode;
+
+    public UrlStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+}
@@ -14,8 +14,10 @@ import java.time.Instant;
 @ToString
 @Table(name = "item_notes")
 public class ItemNote {
+    // id из последовательности блоками, как у Item: заметки вставляются пакетами
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_notes_id")
+    @SequenceGenerator(name = "item_notes_id", sequenceName = "item_notes_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -25,6 +27,10 @@ public class ItemNote {
     @ToString.Exclude
     private Item item;
 
+    // копия items.user_id: заметки пользователя выбираются по индексу (user_id, note_date, id) без соединения
+    @Column(name = "user_id")
+    private Long userId;
+
     private String text;
 
     @Column(name = "note_date")
@@ -1,7 +1,12 @@
 package ru.practicum.note;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -12,6 +17,8 @@ public class ItemNoteController {
 
     private final ItemNoteService itemNoteService;
 
+    private final ItemNoteExporter itemNoteExporter;
+
     @GetMapping(params = "url")
     public List<ItemNoteDto> searchByUrl(@RequestHeader("X-Later-User-Id") long userId,
                                          @RequestParam(name = "url") String url) {
@@ -25,10 +32,26 @@ public class ItemNoteController {
     }
 
     @GetMapping
-    public List<ItemNoteDto> listAllNotes(@RequestHeader("X-Later-User-Id") long userId,
-                                          @RequestParam(name = "from", defaultValue = "0") int from,
-                                          @RequestParam(name = "size", defaultValue = "10") int size) {
-        return itemNoteService.listAllItemsWithNotes(userId, from, size);
+    public ResponseEntity<List<ItemNoteDto>> listAllNotes(@RequestHeader("X-Later-User-Id") long userId,
+                                                          @RequestParam(name = "from", defaultValue = "0") int from,
+                                                          @RequestParam(name = "size", defaultValue = "10") int size,
+                                                          @RequestParam(name = "cursor", required = false)
+                                                          String cursor) {
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be positive: " + size);
+        }
+        if (from > 0 && cursor == null) {
+            // прежний постраничный вывод по смещению оставлен для совместимости
+            return ResponseEntity.ok(itemNoteService.listAllItemsWithNotes(userId, from, size));
+        }
+        // курсор следующей страницы передаётся в заголовке ответа
+        return itemNoteService.listAllItemsWithNotes(userId, cursor, size).toResponseEntity();
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAllNotes(@RequestHeader("X-Later-User-Id") long userId) {
+        // все заметки одним ответом, по заметке в строке
+        return itemNoteExporter.export(userId);
     }
 
     @PostMapping
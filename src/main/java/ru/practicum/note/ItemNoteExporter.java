@@ -0,0 +1,85 @@
+package ru.practicum.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.common.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Выгрузка всех заметок пользователя в формате NDJSON, курсором порциями по fetch-size.
+ */
+@Service
+class ItemNoteExporter {
+    private static final String SELECT_NOTES = "SELECT n.id, n.item_id, n.text, n.note_date, i.url "
+            + "FROM item_notes AS n "
+            + "JOIN items AS i ON i.id = n.item_id "
+            + "WHERE n.user_id = ? "
+            + "ORDER BY n.note_date DESC, n.id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter writer;
+    private final int fetchSize;
+
+    ItemNoteExporter(DataSource dataSource,
+                     PlatformTransactionManager transactionManager,
+                     ObjectMapper objectMapper,
+                     @Value("${item-export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        // PostgreSQL читает курсором только внутри транзакции
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.writer = objectMapper.writerFor(ItemNoteDto.class);
+        this.fetchSize = fetchSize;
+    }
+
+    public StreamingResponseBody export(long userId) {
+        // сразу после записи пользователя выгрузка, как и остальные чтения, идёт с основной базы
+        return ReplicaRoutingDataSource.withCurrentRouting(out -> write(userId, out));
+    }
+
+    private void write(long userId, OutputStream out) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                int[] written = {0};
+                jdbcTemplate.query(SELECT_NOTES, rs -> {
+                    try {
+                        out.write(writer.writeValueAsBytes(mapRow(rs)));
+                        out.write('\n');
+                        if (++written[0] % fetchSize == 0) {
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, userId);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    private static ItemNoteDto mapRow(ResultSet rs) throws SQLException {
+        return new ItemNoteDto(
+                rs.getLong("id"),
+                rs.getLong("item_id"),
+                rs.getString("text"),
+                ItemNoteMapper.formatDateOfNote(rs.getTimestamp("note_date").toInstant()),
+                rs.getString("url")
+        );
+    }
+}
@@ -4,6 +4,7 @@ import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import ru.practicum.item.Item;
 
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -13,20 +14,42 @@ import java.util.List;
 public class ItemNoteMapper {
 
     public static ItemNoteDto mapToItemNoteDto(ItemNote itemNote) {
-        String dateOfNote = DateTimeFormatter
-                .ofPattern("yyyy.MM.dd hh:mm:ss")
-                .withZone(ZoneOffset.UTC)
-                .format(itemNote.getDateOfNote());
-
         return new ItemNoteDto(
                 itemNote.getId(),
                 itemNote.getItem().getId(),
                 itemNote.getText(),
-                dateOfNote,
+                formatDateOfNote(itemNote.getDateOfNote()),
                 itemNote.getItem().getUrl()
         );
     }
 
+    public static ItemNoteDto mapToItemNoteDto(ItemNoteView itemNote) {
+        return new ItemNoteDto(
+                itemNote.id(),
+                itemNote.itemId(),
+                itemNote.text(),
+                formatDateOfNote(itemNote.dateOfNote()),
+                itemNote.itemUrl()
+        );
+    }
+
+    static ItemNoteDto mapToItemNoteDto(ItemNoteRepository.NoteRow itemNote) {
+        return new ItemNoteDto(
+                itemNote.getId(),
+                itemNote.getItemId(),
+                itemNote.getText(),
+                formatDateOfNote(itemNote.getDateOfNote()),
+                itemNote.getItemUrl()
+        );
+    }
+
+    static String formatDateOfNote(Instant dateOfNote) {
+        return DateTimeFormatter
+                .ofPattern("yyyy.MM.dd hh:mm:ss")
+                .withZone(ZoneOffset.UTC)
+                .format(dateOfNote);
+    }
+
     public static List<ItemNoteDto> mapToItemNoteDto(Iterable<ItemNote> itemNotes) {
         List<ItemNoteDto> dtos = new ArrayList<>();
         for (ItemNote itemNote : itemNotes) {
@@ -35,9 +58,26 @@ public class ItemNoteMapper {
         return dtos;
     }
 
+    public static List<ItemNoteDto> mapViewsToItemNoteDto(List<ItemNoteView> itemNotes) {
+        List<ItemNoteDto> dtos = new ArrayList<>(itemNotes.size());
+        for (ItemNoteView itemNote : itemNotes) {
+            dtos.add(mapToItemNoteDto(itemNote));
+        }
+        return dtos;
+    }
+
+    static List<ItemNoteDto> mapRowsToItemNoteDto(List<ItemNoteRepository.NoteRow> itemNotes) {
+        List<ItemNoteDto> dtos = new ArrayList<>(itemNotes.size());
+        for (ItemNoteRepository.NoteRow itemNote : itemNotes) {
+            dtos.add(mapToItemNoteDto(itemNote));
+        }
+        return dtos;
+    }
+
     public static ItemNote mapToItemNote(ItemNoteDto itemNoteDto, Item item) {
         ItemNote itemNote = new ItemNote();
         itemNote.setItem(item);
+        itemNote.setUserId(item.getUser().getId());
         itemNote.setText(itemNoteDto.getText());
         return itemNote;
     }
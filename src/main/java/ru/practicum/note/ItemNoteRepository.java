@@ -1,23 +1,66 @@
 package ru.practicum.note;
 
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 
 @Transactional(readOnly = true)
 interface ItemNoteRepository extends JpaRepository<ItemNote, Long> {
-    List<ItemNote> findAllByItemUserIdAndItemUrlContaining(long userId, String url);
+    // заметки для чтения: адрес элемента выбирается тем же запросом, строки сразу создаются как ItemNoteView
+    String NOTE_VIEW = "select new ru.practicum.note.ItemNoteView(n.id, i.id, n.text, n.dateOfNote, i.url) " +
+            "from ItemNote as n " +
+            "join n.item as i ";
 
-    @Query("select itNote " +
-            "from ItemNote as itNote " +
-            "join itNote.item as i " +
-            "where i.user.id = ?1" +
-            "  and ?2 member of i.tags")
-    List<ItemNote> findByTag(Long userId, String tag);
+    // символы % и _ в адресе из запроса ищутся как есть
+    @Query(NOTE_VIEW +
+            "where i.user.id = ?1 and i.url like %?#{escape([1])}% escape ?#{escapeCharacter()}")
+    List<ItemNoteView> findViewsByUserIdAndUrlContaining(long userId, String url);
 
-    Page<ItemNote> findAllByItemUserId(long userId, Pageable page);
+    // поиск по тэгу идёт по индексу item_tags, а не перебором коллекции тэгов каждого элемента.
+    // item_tags не отображается на сущность, поэтому запрос SQL, а строки - проекция на интерфейс
+    @Query(value = "SELECT n.id AS \"id\", n.item_id AS \"itemId\", n.text AS \"text\", " +
+            "n.note_date AS \"dateOfNote\", i.url AS \"itemUrl\" " +
+            "FROM item_notes AS n " +
+            "JOIN items AS i ON i.id = n.item_id " +
+            "WHERE n.item_id IN (" +
+            "  SELECT it.item_id FROM item_tags AS it " +
+            "  JOIN tag_names AS tn ON tn.id = it.tag_id " +
+            "  WHERE it.user_id = ?1 AND tn.name = ?2)", nativeQuery = true)
+    List<NoteRow> findByTag(Long userId, String tag);
+
+    // Slice вместо Page: следующая страница определяется без запроса count(*)
+    @Query(NOTE_VIEW + "where n.userId = ?1")
+    Slice<ItemNoteView> findViewsByUserId(long userId, Pageable page);
+
+    // постраничный вывод по ключу (note_date, id) внутри заметок пользователя:
+    // индекс item_notes (user_id, note_date, id) отдаёт страницу без сортировки всех его заметок
+    @Query(NOTE_VIEW +
+            "where n.userId = ?1 " +
+            "order by n.dateOfNote desc, n.id desc")
+    List<ItemNoteView> findViewPageByUserId(long userId, Limit limit);
+
+    @Query(NOTE_VIEW +
+            "where n.userId = ?1" +
+            "  and n.dateOfNote <= ?2" +
+            "  and (n.dateOfNote < ?2 or n.id < ?3) " +
+            "order by n.dateOfNote desc, n.id desc")
+    List<ItemNoteView> findViewPageByUserIdAfter(long userId, Instant dateOfNote, long id, Limit limit);
+
+    interface NoteRow {
+        Long getId();
+
+        Long getItemId();
+
+        String getText();
+
+        Instant getDateOfNote();
+
+        String getItemUrl();
+    }
 }
@@ -1,6 +1,7 @@
 package ru.practicum.note;
 
 import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.common.KeysetPage;
 
 import java.util.List;
 
@@ -15,4 +16,6 @@ interface ItemNoteService {
     List<ItemNoteDto> searchNotesByTag(long userId, String tag);
 
     List<ItemNoteDto> listAllItemsWithNotes(long userId, int from, int size);
+
+    KeysetPage<ItemNoteDto> listAllItemsWithNotes(long userId, String cursor, int size);
 }
\ No newline at end of file
@@ -1,15 +1,21 @@
 package ru.practicum.note;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.common.KeysetCursor;
+import ru.practicum.common.KeysetPage;
 import ru.practicum.item.Item;
 import ru.practicum.item.ItemRepository;
 
 import java.util.List;
 
 @Service
+@Timed("later.service")
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class ItemNoteServiceImpl implements ItemNoteService {
@@ -27,23 +33,46 @@ public class ItemNoteServiceImpl implements ItemNoteService {
         return ItemNoteMapper.mapToItemNoteDto(itemNote);
     }
 
+    // чтение идёт через проекции: заметки и элементы не становятся сущностями в контексте постоянства
+
     @Override
     public List<ItemNoteDto> searchNotesByUrl(long userId, String url) {
-        List<ItemNote> itemNotes = itemNoteRepository.findAllByItemUserIdAndItemUrlContaining(userId, url);
-        return ItemNoteMapper.mapToItemNoteDto(itemNotes);
+        List<ItemNoteView> itemNotes = itemNoteRepository.findViewsByUserIdAndUrlContaining(userId, url);
+        return ItemNoteMapper.mapViewsToItemNoteDto(itemNotes);
     }
 
     @Override
     public List<ItemNoteDto> searchNotesByTag(long userId, String tag) {
-        List<ItemNote> itemNotes = itemNoteRepository.findByTag(userId, tag);
-        return ItemNoteMapper.mapToItemNoteDto(itemNotes);
+        List<ItemNoteRepository.NoteRow> itemNotes = itemNoteRepository.findByTag(userId, tag);
+        return ItemNoteMapper.mapRowsToItemNoteDto(itemNotes);
     }
 
     @Override
     public List<ItemNoteDto> listAllItemsWithNotes(long userId, int from, int size) {
-        PageRequest page = PageRequest.of(from > 0 ? from / size : 0, size);
-        return itemNoteRepository.findAllByItemUserId(userId, page)
+        Sort byDate = Sort.by(Sort.Order.desc("dateOfNote"), Sort.Order.desc("id"));
+        PageRequest page = PageRequest.of(from > 0 ? from / size : 0, size, byDate);
+        return itemNoteRepository.findViewsByUserId(userId, page)
                 .map(ItemNoteMapper::mapToItemNoteDto)
                 .getContent();
     }
+
+    @Override
+    public KeysetPage<ItemNoteDto> listAllItemsWithNotes(long userId, String cursor, int size) {
+        // запрашиваем на одну заметку больше, чтобы узнать, есть ли следующая страница
+        Limit limit = Limit.of(size + 1);
+        final List<ItemNoteView> found;
+        if (cursor == null) {
+            found = itemNoteRepository.findViewPageByUserId(userId, limit);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            found = itemNoteRepository.findViewPageByUserIdAfter(userId, after.date(), after.id(), limit);
+        }
+        List<ItemNoteView> page = found.size() > size ? found.subList(0, size) : found;
+        String nextCursor = null;
+        if (found.size() > size) {
+            ItemNoteView last = page.getLast();
+            nextCursor = new KeysetCursor(last.dateOfNote(), last.id()).encode();
+        }
+        return new KeysetPage<>(ItemNoteMapper.mapViewsToItemNoteDto(page), nextCursor);
+    }
 }
@@ -0,0 +1,10 @@
+package ru.practicum.note;
+
+import java.time.Instant;
+
+/**
+ * Заметка с адресом элемента для чтения: создаётся конструктором прямо в запросе (select new)
+ * и не попадает в контекст постоянства.
+ */
+public record ItemNoteView(Long id, Long itemId, String text, Instant dateOfNote, String itemUrl) {
+}
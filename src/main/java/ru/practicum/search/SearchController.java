@@ -0,0 +1,34 @@
+package ru.practicum.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/search")
+@RequiredArgsConstructor
+public class SearchController {
+    // from и size попадают в OFFSET/LIMIT: без ограничения один запрос мог бы выбрать всю библиотеку
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final SearchService searchService;
+
+    // поиск по заголовкам и адресам ссылок и по тексту заметок, самые релевантные результаты первыми
+    @GetMapping
+    public List<SearchHitDto> search(@RequestHeader("X-Later-User-Id") long userId,
+                                     @RequestParam(name = "q") String query,
+                                     @RequestParam(name = "from", defaultValue = "0") int from,
+                                     @RequestParam(name = "size", defaultValue = "10") int size) {
+        if (from < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Offset must not be negative: " + from);
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Page size must be between 1 and %d: %d", MAX_PAGE_SIZE, size));
+        }
+        return searchService.search(userId, query, from, size);
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHitDto {
+    private Long itemId;
+    private Long noteId; // null, если совпадение найдено в самом элементе, а не в заметке
+    private String url;
+    private String title;
+    private String noteText;
+    private float rank;
+}
@@ -0,0 +1,51 @@
+package ru.practicum.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+class SearchRepository {
+    // совпадения в элементах (адрес в items, заголовок и итоговый адрес в общей записи urls)
+    // и в заметках, по GIN-индексам на search_vector
+    private static final String SEARCH = "WITH q AS (SELECT websearch_to_tsquery('simple', :query) AS query) "
+            + "SELECT hit.* FROM ("
+            + "  SELECT i.id AS item_id, NULL::BIGINT AS note_id, i.url, u.title, NULL AS note_text,"
+            + "         greatest(ts_rank(i.search_vector, q.query),"
+            + "                  coalesce(ts_rank(u.search_vector, q.query), 0)) AS rank"
+            + "  FROM items AS i"
+            + "  LEFT JOIN urls AS u ON u.id = i.url_id, q"
+            + "  WHERE i.user_id = :userId AND (i.search_vector @@ q.query OR u.search_vector @@ q.query)"
+            + "  UNION ALL"
+            + "  SELECT i.id, n.id, i.url, u.title, n.text,"
+            + "         ts_rank(n.search_vector, q.query)"
+            + "  FROM item_notes AS n"
+            + "  JOIN items AS i ON i.id = n.item_id"
+            + "  LEFT JOIN urls AS u ON u.id = i.url_id, q"
+            + "  WHERE i.user_id = :userId AND n.search_vector @@ q.query"
+            + ") AS hit "
+            + "ORDER BY hit.rank DESC, hit.item_id DESC, hit.note_id DESC NULLS FIRST "
+            + "LIMIT :size OFFSET :from";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public List<SearchHitDto> search(long userId, String query, int from, int size) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("query", query)
+                .addValue("from", from)
+                .addValue("size", size);
+        return jdbcTemplate.query(SEARCH, params, (rs, rowNum) -> new SearchHitDto(
+                rs.getLong("item_id"),
+                rs.getObject("note_id", Long.class),
+                rs.getString("url"),
+                rs.getString("title"),
+                rs.getString("note_text"),
+                rs.getFloat("rank")
+        ));
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.search;
+
+import java.util.List;
+
+interface SearchService {
+    List<SearchHitDto> search(long userId, String query, int from, int size);
+}
@@ -0,0 +1,24 @@
+package ru.practicum.search;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@Timed("later.service")
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+class SearchServiceImpl implements SearchService {
+    private final SearchRepository repository;
+
+    @Override
+    public List<SearchHitDto> search(long userId, String query, int from, int size) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return repository.search(userId, query, from, size);
+    }
+}
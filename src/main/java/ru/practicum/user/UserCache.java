@@ -0,0 +1,48 @@
+package ru.practicum.user;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Кэш пользователей по id. Пользователи не изменяются и не удаляются,
+ * поэтому запись в кэше не устаревает; отсутствующие пользователи не кэшируются.
+ */
+@Component
+public class UserCache {
+    private final UserRepository repository;
+    private final Cache<Long, UserDto> byId;
+
+    UserCache(UserRepository repository,
+              MeterRegistry meterRegistry,
+              @Value("${user-cache.maximum-size:10000}") long maximumSize,
+              @Value("${user-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.repository = repository;
+        this.byId = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, byId, "users");
+    }
+
+    public Optional<UserDto> getUser(long userId) {
+        UserDto cached = byId.getIfPresent(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<UserDto> user = repository.findViewById(userId).map(UserMapper::mapToUserDto);
+        user.ifPresent(dto -> byId.put(userId, dto));
+        return user;
+    }
+
+    public boolean exists(long userId) {
+        return getUser(userId).isPresent();
+    }
+}
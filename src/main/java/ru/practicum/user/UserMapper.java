@@ -3,6 +3,7 @@ package ru.practicum.user;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -11,14 +12,24 @@ import java.util.List;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class UserMapper {
     public static UserDto mapToUserDto(User user) {
-        String regDate = DateTimeFormatter
-                .ofPattern("yyyy.MM.dd hh:mm:ss")
-                .withZone(ZoneOffset.UTC)
-                .format(user.getRegistrationDate());
+        String regDate = formatRegistrationDate(user.getRegistrationDate());
 
         return new UserDto(user.getId(), user.getEmail(), user.getFirstName(), user.getLastName(), regDate, user.getState(), null);
     }
 
+    public static UserDto mapToUserDto(UserView user) {
+        String regDate = formatRegistrationDate(user.registrationDate());
+
+        return new UserDto(user.id(), user.email(), user.firstName(), user.lastName(), regDate, user.state(), null);
+    }
+
+    private static String formatRegistrationDate(Instant registrationDate) {
+        return DateTimeFormatter
+                .ofPattern("yyyy.MM.dd hh:mm:ss")
+                .withZone(ZoneOffset.UTC)
+                .format(registrationDate);
+    }
+
     public static List<UserDto> mapToUserDto(Iterable<User> users) {
         List<UserDto> result = new ArrayList<>();
 
@@ -29,6 +40,16 @@ class UserMapper {
         return result;
     }
 
+    public static List<UserDto> mapViewsToUserDto(List<UserView> users) {
+        List<UserDto> result = new ArrayList<>(users.size());
+
+        for (UserView user : users) {
+            result.add(mapToUserDto(user));
+        }
+
+        return result;
+    }
+
     public static User mapToNewUser(UserDto userDto) {
         User user = new User();
         user.setEmail(userDto.getEmail());
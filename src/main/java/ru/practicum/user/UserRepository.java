@@ -1,8 +1,22 @@
 package ru.practicum.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
-}
\ No newline at end of file
+    // пользователи для чтения: строки сразу создаются как UserView, без сущностей в контексте постоянства
+    String USER_VIEW = "select new ru.practicum.user.UserView(u.id, u.email, u.firstName, u.lastName," +
+            " u.registrationDate, u.state) " +
+            "from User as u";
+
+    @Query(USER_VIEW)
+    List<UserView> findAllViews();
+
+    @Query(USER_VIEW + " where u.id = ?1")
+    Optional<UserView> findViewById(long id);
+}
@@ -1,5 +1,6 @@
 package ru.practicum.user;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -7,6 +8,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Service
+@Timed("later.service")
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 class UserServiceImpl implements UserService {
@@ -14,8 +16,9 @@ class UserServiceImpl implements UserService {
 
     @Override
     public List<UserDto> getAllUsers() {
-        List<User> users = repository.findAll();
-        return UserMapper.mapToUserDto(users);
+        // проекция: пользователи не становятся сущностями в контексте постоянства
+        List<UserView> users = repository.findAllViews();
+        return UserMapper.mapViewsToUserDto(users);
     }
 
     @Override
@@ -0,0 +1,11 @@
+package ru.practicum.user;
+
+import java.time.Instant;
+
+/**
+ * Пользователь для чтения: создаётся конструктором прямо в запросе (select new)
+ * и не попадает в контекст постоянства.
+ */
+public record UserView(Long id, String email, String firstName, String lastName, Instant registrationDate,
+                       UserState state) {
+}
@@ -11,10 +11,22 @@ CREATE TABLE IF NOT EXISTS items (
   id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
   user_id BIGINT,
   url VARCHAR(1000),
+  resolved_url VARCHAR(1000),
+  mime_type VARCHAR(50),
+  title VARCHAR(1000),
+  has_image BOOLEAN,
+  has_video BOOLEAN,
+  date_resolved timestamp,
+  state varchar(50),
+  etag VARCHAR(1000),
+  last_modified VARCHAR(100),
   CONSTRAINT fk_items_to_users FOREIGN KEY(user_id) REFERENCES users(id),
   UNIQUE(id, url)
 );
 
+-- базы, созданные до появления асинхронного разрешения ссылок
+ALTER TABLE items ADD COLUMN IF NOT EXISTS state varchar(50);
+
 CREATE TABLE IF NOT EXISTS tags (
   id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
   item_id BIGINT,
@@ -25,7 +37,177 @@ CREATE TABLE IF NOT EXISTS tags (
 CREATE TABLE IF NOT EXISTS item_notes (
   id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
   item_id BIGINT,
+  user_id BIGINT,
   text VARCHAR(2000),
   note_date timestamp,
   CONSTRAINT items FOREIGN KEY(item_id) REFERENCES items(id)
 );
+
+-- постраничный вывод по ключу: страница N стоит столько же, сколько первая
+CREATE INDEX IF NOT EXISTS items_user_date_resolved_idx ON items (user_id, date_resolved DESC, id DESC);
+CREATE INDEX IF NOT EXISTS item_notes_item_id_idx ON item_notes (item_id);
+-- заметки выбираются по пользователю, поэтому он копируется из items и стоит первым в ключе индекса.
+-- Элемент заметки меняется только слиянием повторов одного пользователя, так что копия не расходится с items
+ALTER TABLE item_notes ADD COLUMN IF NOT EXISTS user_id BIGINT;
+UPDATE item_notes AS n SET user_id = i.user_id
+FROM items AS i
+WHERE n.user_id IS NULL AND i.id = n.item_id;
+DROP INDEX IF EXISTS item_notes_note_date_idx;
+CREATE INDEX IF NOT EXISTS item_notes_user_note_date_idx ON item_notes (user_id, note_date DESC, id DESC);
+
+-- словарь тэгов и индекс "пользователь - тэг - элемент" для фильтрации по тэгам;
+-- таблица tags остаётся хранилищем коллекции Item.tags
+CREATE TABLE IF NOT EXISTS tag_names (
+  id INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  name VARCHAR(50) NOT NULL,
+  CONSTRAINT tag_names_name_uq UNIQUE(name)
+);
+
+CREATE TABLE IF NOT EXISTS item_tags (
+  user_id BIGINT NOT NULL,
+  tag_id INT NOT NULL,
+  item_id BIGINT NOT NULL,
+  PRIMARY KEY (user_id, tag_id, item_id),
+  CONSTRAINT fk_item_tags_to_tag_names FOREIGN KEY(tag_id) REFERENCES tag_names(id),
+  CONSTRAINT fk_item_tags_to_items FOREIGN KEY(item_id) REFERENCES items(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS item_tags_item_id_idx ON item_tags (item_id);
+CREATE INDEX IF NOT EXISTS tags_item_id_idx ON tags (item_id);
+
+-- первичное заполнение индекса по уже сохранённым тэгам
+INSERT INTO tag_names (name)
+SELECT DISTINCT name FROM tags
+WHERE name IS NOT NULL AND NOT EXISTS (SELECT 1 FROM item_tags)
+ON CONFLICT (name) DO NOTHING;
+
+INSERT INTO item_tags (user_id, tag_id, item_id)
+SELECT i.user_id, tn.id, t.item_id
+FROM tags t
+JOIN items i ON i.id = t.item_id
+JOIN tag_names tn ON tn.name = t.name
+WHERE i.user_id IS NOT NULL AND NOT EXISTS (SELECT 1 FROM item_tags)
+ON CONFLICT DO NOTHING;
+
+-- полнотекстовый поиск: векторы пересчитываются базой при каждой записи элемента или заметки
+ALTER TABLE items ADD COLUMN IF NOT EXISTS search_vector tsvector
+  GENERATED ALWAYS AS (to_tsvector('simple', coalesce(title, '') || ' ' || coalesce(url, ''))) STORED;
+ALTER TABLE item_notes ADD COLUMN IF NOT EXISTS search_vector tsvector
+  GENERATED ALWAYS AS (to_tsvector('simple', coalesce(text, ''))) STORED;
+CREATE INDEX IF NOT EXISTS items_search_vector_idx ON items USING gin (search_vector);
+CREATE INDEX IF NOT EXISTS item_notes_search_vector_idx ON item_notes USING gin (search_vector);
+
+-- поиск подстроки в адресе (LIKE '%...%' в поиске заметок по url) по триграммному индексу
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS items_url_trgm_idx ON items USING gin (url gin_trgm_ops);
+
+-- фоновое обновление метаданных: валидаторы для условных запросов
+ALTER TABLE items ADD COLUMN IF NOT EXISTS etag VARCHAR(1000);
+ALTER TABLE items ADD COLUMN IF NOT EXISTS last_modified VARCHAR(100);
+
+-- метаданные страниц общие для всех пользователей: одна запись на адрес, элементы ссылаются на неё.
+-- колонки resolved_url ... last_modified в items остаются только для переноса старых данных
+CREATE TABLE IF NOT EXISTS urls (
+  id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  resolved_url VARCHAR(1000) NOT NULL,
+  mime_type VARCHAR(50),
+  title VARCHAR(1000),
+  has_image BOOLEAN,
+  has_video BOOLEAN,
+  date_resolved timestamp,
+  etag VARCHAR(1000),
+  last_modified VARCHAR(100)
+);
+
+-- повторы определяются по каноническому адресу страницы (UrlCanonicalizer): адреса, отличающиеся метками
+-- отслеживания, www., регистром хоста, завершающим слэшем или фрагментом, ведут на одну запись urls.
+-- У записей, сохранённых раньше, здесь канонический адрес - прежний адрес после перенаправлений;
+-- настоящий ключ им один раз задаёт UrlCanonicalBackfill при запуске приложения
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS canonical_url VARCHAR(1000);
+UPDATE urls SET canonical_url = resolved_url WHERE canonical_url IS NULL;
+ALTER TABLE urls ALTER COLUMN canonical_url SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS urls_canonical_url_uq ON urls (canonical_url);
+-- отметка "ключ ещё не пересчитан": при добавлении столбца её получают все уже существующие записи,
+-- новые записи (с каноническим ключом) - нет. Индекс частичный, поэтому обход пересчитанной таблицы пуст
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS canonical_pending BOOLEAN NOT NULL DEFAULT true;
+ALTER TABLE urls ALTER COLUMN canonical_pending SET DEFAULT false;
+CREATE INDEX IF NOT EXISTS urls_canonical_pending_idx ON urls (id) WHERE canonical_pending;
+-- последний адрес после перенаправлений хранится для обновления метаданных, но ключом больше не является.
+-- Ключ задаётся до переноса данных из items ниже: скрипт выполняется при каждом запуске, а ON CONFLICT
+-- требует уникального индекса по столбцу, даже когда вставлять нечего
+ALTER TABLE urls DROP CONSTRAINT IF EXISTS urls_resolved_url_uq;
+
+ALTER TABLE items ADD COLUMN IF NOT EXISTS url_id BIGINT REFERENCES urls(id);
+
+-- перенос метаданных из items: для каждого адреса берётся самая свежая копия
+INSERT INTO urls (canonical_url, canonical_pending, resolved_url, mime_type, title, has_image, has_video,
+                  date_resolved, etag, last_modified)
+SELECT DISTINCT ON (resolved_url) resolved_url, true, resolved_url, mime_type, title, has_image, has_video,
+       date_resolved, etag, last_modified
+FROM items
+WHERE resolved_url IS NOT NULL AND url_id IS NULL
+ORDER BY resolved_url, date_resolved DESC
+ON CONFLICT (canonical_url) DO NOTHING;
+
+UPDATE items AS i SET url_id = u.id
+FROM urls AS u
+WHERE i.url_id IS NULL AND i.resolved_url IS NOT NULL AND u.canonical_url = i.resolved_url;
+
+UPDATE items
+SET resolved_url = NULL, mime_type = NULL, title = NULL, has_image = NULL, has_video = NULL,
+    etag = NULL, last_modified = NULL
+WHERE url_id IS NOT NULL AND resolved_url IS NOT NULL;
+
+-- индексы по копиям метаданных в items больше не нужны
+DROP INDEX IF EXISTS items_state_date_resolved_idx;
+DROP INDEX IF EXISTS items_resolved_url_idx;
+
+CREATE INDEX IF NOT EXISTS items_url_id_idx ON items (url_id);
+-- обход устаревших страниц фоновым обновлением
+CREATE INDEX IF NOT EXISTS urls_date_resolved_idx ON urls (date_resolved, id);
+-- заголовок страницы для полнотекстового поиска теперь хранится в urls
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS search_vector tsvector
+  GENERATED ALWAYS AS (to_tsvector('simple', coalesce(title, '') || ' ' || resolved_url)) STORED;
+CREATE INDEX IF NOT EXISTS urls_search_vector_idx ON urls USING gin (search_vector);
+
+-- один элемент на страницу у каждого пользователя. Повторы, сохранённые раньше одновременными запросами,
+-- сливаются в самый ранний элемент: заметки и тэги переносятся, остальные элементы удаляются
+UPDATE item_notes AS n SET item_id = d.keep_id
+FROM (SELECT id, min(id) OVER (PARTITION BY user_id, url_id) AS keep_id FROM items WHERE url_id IS NOT NULL) AS d
+WHERE n.item_id = d.id AND d.id <> d.keep_id;
+
+INSERT INTO tags (item_id, name)
+SELECT DISTINCT d.keep_id, t.name
+FROM tags AS t
+JOIN (SELECT id, min(id) OVER (PARTITION BY user_id, url_id) AS keep_id FROM items WHERE url_id IS NOT NULL) AS d
+  ON d.id = t.item_id AND d.id <> d.keep_id
+WHERE NOT EXISTS (SELECT 1 FROM tags AS k WHERE k.item_id = d.keep_id AND k.name = t.name);
+
+INSERT INTO item_tags (user_id, tag_id, item_id)
+SELECT it.user_id, it.tag_id, d.keep_id
+FROM item_tags AS it
+JOIN (SELECT id, min(id) OVER (PARTITION BY user_id, url_id) AS keep_id FROM items WHERE url_id IS NOT NULL) AS d
+  ON d.id = it.item_id AND d.id <> d.keep_id
+ON CONFLICT DO NOTHING;
+
+DELETE FROM tags
+WHERE item_id IN (SELECT d.id
+                  FROM (SELECT id, min(id) OVER (PARTITION BY user_id, url_id) AS keep_id
+                        FROM items WHERE url_id IS NOT NULL) AS d
+                  WHERE d.id <> d.keep_id);
+
+DELETE FROM items
+WHERE id IN (SELECT d.id
+             FROM (SELECT id, min(id) OVER (PARTITION BY user_id, url_id) AS keep_id
+                   FROM items WHERE url_id IS NOT NULL) AS d
+             WHERE d.id <> d.keep_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS items_user_url_id_uq ON items (user_id, url_id);
+
+-- id элементов и заметок выдаёт Hibernate блоками по 50 из последовательностей identity-столбцов
+-- (pooled-lo), поэтому столбцы принимают заданный id, а шаг последовательностей равен размеру блока.
+-- Вставки без id (ON CONFLICT в ItemRepository, миграции) по-прежнему получают значение по умолчанию
+ALTER TABLE items ALTER COLUMN id SET GENERATED BY DEFAULT;
+ALTER TABLE items ALTER COLUMN id SET INCREMENT BY 50;
+ALTER TABLE item_notes ALTER COLUMN id SET GENERATED BY DEFAULT;
+ALTER TABLE item_notes ALTER COLUMN id SET INCREMENT BY 50;
@@ -0,0 +1,122 @@
+package ru.practicum.common;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.web.servlet.setup.StandaloneMockMvcBuilder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.core.BodyFilters;
+import org.zalando.logbook.core.DefaultSink;
+import org.zalando.logbook.json.JsonHttpLogFormatter;
+import org.zalando.logbook.servlet.LogbookFilter;
+import ru.practicum.item.ItemDto;
+import ru.practicum.item.ItemState;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Цена журнала HTTP-запросов на ответе GET /items с тысячами элементов:
+ * без Logbook, в режимах ACCESS и BODY, с телом на исключённом пути и с выборочной записью.
+ * Запись идёт в пустой приёмник, поэтому измеряются захват тел и форматирование, а не вывод.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpLogBenchmark {
+    @Param({"none", "access", "body", "body-excluded", "sampled"})
+    private String logging;
+
+    @Param({"5000"})
+    private int size;
+
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        StandaloneMockMvcBuilder builder = MockMvcBuilders.standaloneSetup(new ItemsController(items(size)));
+        if (!logging.equals("none")) {
+            builder.addFilters(new LogbookFilter(logbook(logging)));
+        }
+        mockMvc = builder.build();
+    }
+
+    @Benchmark
+    public MvcResult getItems() throws Exception {
+        return mockMvc.perform(get("/items")).andReturn();
+    }
+
+    private static Logbook logbook(String logging) {
+        HttpLogConfig config = new HttpLogConfig();
+        HttpLogStrategy.Mode mode = logging.equals("access") ? HttpLogStrategy.Mode.ACCESS : HttpLogStrategy.Mode.BODY;
+        List<String> bodyExcludePaths = logging.equals("body-excluded") ? List.of("/items") : List.of();
+        double sampleRate = logging.equals("sampled") ? 0.01 : 1.0;
+        return Logbook.builder()
+                .condition(config.requestCondition(List.of("/actuator/**"), sampleRate))
+                .strategy(config.strategy(mode, bodyExcludePaths))
+                .bodyFilter(BodyFilters.truncate(2048))
+                .sink(new DefaultSink(new JsonHttpLogFormatter(), new DiscardingWriter()))
+                .build();
+    }
+
+    private static List<ItemDto> items(int size) {
+        List<ItemDto> items = new ArrayList<>(size);
+        Instant now = Instant.now();
+        for (long i = 0; i < size; i++) {
+            items.add(new ItemDto(i, 1L, "https://example.com/articles/" + i,
+                    "https://www.example.com/articles/" + i, "text", "Article " + i,
+                    i % 2 == 0, false, now, Set.of("java", "tag" + i % 10), ItemState.RESOLVED));
+        }
+        return items;
+    }
+
+    @RestController
+    static class ItemsController {
+        private final List<ItemDto> items;
+
+        ItemsController(List<ItemDto> items) {
+            this.items = items;
+        }
+
+        @GetMapping("/items")
+        public List<ItemDto> getItems() {
+            return items;
+        }
+    }
+
+    private static class DiscardingWriter implements HttpLogWriter {
+        @Override
+        public void write(Precorrelation precorrelation, String request) {
+        }
+
+        @Override
+        public void write(Correlation correlation, String response) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpLogBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
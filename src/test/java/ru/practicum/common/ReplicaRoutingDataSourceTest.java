@@ -0,0 +1,151 @@
+package ru.practicum.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replicaConnection = mock(Connection.class);
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        routing = new ReplicaRoutingDataSource(primary, List.of(replica), 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.usePrimary(false);
+    }
+
+    @Test
+    void testWritesGoToPrimary() throws SQLException {
+        assertThat(routing.getConnection(), sameInstance(primaryConnection));
+    }
+
+    @Test
+    void testReadOnlyGoesToReplica() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(routing.getConnection(), sameInstance(replicaConnection));
+    }
+
+    @Test
+    void testReadYourWritesGoesToPrimary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReplicaRoutingDataSource.usePrimary(true);
+
+        assertThat(routing.getConnection(), sameInstance(primaryConnection));
+    }
+
+    @Test
+    void testOnPrimaryRestoresRouting() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        Connection inside = ReplicaRoutingDataSource.onPrimary(() -> {
+            try {
+                return routing.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThat(inside, sameInstance(primaryConnection));
+        assertThat(routing.getConnection(), sameInstance(replicaConnection));
+    }
+
+    @Test
+    void testStreamingBodyKeepsPrimaryRoutingOnAnotherThread() throws Exception {
+        ReplicaRoutingDataSource.usePrimary(true);
+        Connection[] used = new Connection[1];
+        StreamingResponseBody body = ReplicaRoutingDataSource.withCurrentRouting(out -> {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+            try {
+                used[0] = routing.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } finally {
+                TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            }
+        });
+        ReplicaRoutingDataSource.usePrimary(false);
+
+        // ответ пишется потоком асинхронной обработки, а не потоком запроса
+        Thread writer = new Thread(() -> {
+            try {
+                body.writeTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        writer.join();
+
+        assertThat(used[0], sameInstance(primaryConnection));
+    }
+
+    @Test
+    void testCaughtUpReplicaIsNotLaggingWhilePrimaryIsIdle() throws SQLException {
+        // последняя запись на основной базе была давно, но реплика применила всё полученное
+        assertThat(ReplicaRoutingDataSource.LAG_QUERY,
+                containsString("pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"));
+        ReplicaRoutingDataSource checked = new ReplicaRoutingDataSource(primary, List.of(replica), 10000);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        replicaLag(0);
+        checked.checkReplicas();
+        assertThat(checked.getConnection(), sameInstance(replicaConnection));
+
+        // применение отстало от приёма больше чем на max-lag
+        replicaLag(60000);
+        checked.checkReplicas();
+        assertThat(checked.getConnection(), sameInstance(primaryConnection));
+    }
+
+    @Test
+    void testFailedReplicaFallsBackToPrimaryUntilRecovered() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        assertThat(routing.getConnection(), sameInstance(primaryConnection));
+        assertThat(routing.getConnection(), sameInstance(primaryConnection));
+        verify(replica, times(1)).getConnection();
+
+        reset(replica);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        routing.checkReplicas();
+
+        assertThat(routing.getConnection(), sameInstance(replicaConnection));
+    }
+
+    private void replicaLag(long lagMs) throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(ReplicaRoutingDataSource.LAG_QUERY)).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(lagMs);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.item;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class HtmlHeadScannerTest {
+
+    @Test
+    void testSameResultAsJsoup() {
+        List<String> pages = List.of(
+                "<html><head><title>Simple</title></head><body><img src=a.png><video></video></body></html>",
+                "<!DOCTYPE html><title>  Много   &amp; пробелов\n</title><p>text</p>",
+                "<title>Не тэг: <b>bold</b> </TITLE ><!-- <img> --><script>var s = '<video>';</script>",
+                "<a title=\"x > y\" href='<img>'>link</a><title>second</title><IMG SRC=x>",
+                "<head><title>Без конца",
+                "<body><p>no title at all</p><textarea><img></textarea></body>"
+        );
+        for (String page : pages) {
+            Document doc = Jsoup.parse(page);
+            // подаём страницу кусками по 3 байта, чтобы проверить разбор на границах кусков
+            HtmlHeadScanner scanner = scan(page, StandardCharsets.UTF_8, 3, Long.MAX_VALUE);
+
+            assertThat(page, scanner.getTitle(), equalTo(doc.title()));
+            assertThat(page, scanner.isHasImage(), is(!doc.getElementsByTag("img").isEmpty()));
+            assertThat(page, scanner.isHasVideo(), is(!doc.getElementsByTag("video").isEmpty()));
+        }
+    }
+
+    @Test
+    void testCharsetAndByteLimit() {
+        String page = "<title>Заголовок</title>" + "<p>текст</p>".repeat(1000) + "<img src=x>";
+
+        HtmlHeadScanner limited = scan(page, Charset.forName("windows-1251"), 7, 4096);
+        HtmlHeadScanner full = scan(page, Charset.forName("windows-1251"), 7, Long.MAX_VALUE);
+
+        assertThat(limited.getTitle(), equalTo("Заголовок"));
+        assertThat(limited.isHasImage(), is(false));
+        assertThat(full.isHasImage(), is(true));
+    }
+
+    private HtmlHeadScanner scan(String page, Charset charset, int chunkSize, long maxBytes) {
+        byte[] bytes = page.getBytes(charset);
+        HtmlHeadBodySubscriber subscriber = new HtmlHeadBodySubscriber(charset, maxBytes);
+        boolean[] cancelled = {false};
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled[0] = true;
+            }
+        });
+        for (int from = 0; from < bytes.length && !cancelled[0]; from += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - from);
+            subscriber.onNext(List.of(ByteBuffer.wrap(bytes, from, length)));
+        }
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.item;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение прежнего разбора страницы (строка целиком + Jsoup DOM) с потоковым {@link HtmlHeadScanner}.
+ * Запуск: main-метод этого класса из IDE или из тестового classpath, результаты с профилем -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlParsingBenchmark {
+    // куски такого размера примерно отдаёт HttpClient
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Param({"256", "4096"})
+    private int pageKb;
+
+    // где на странице встречаются img и video: в начале тела или только в самом конце
+    @Param({"early", "late"})
+    private String media;
+
+    private byte[] page;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("<!DOCTYPE html><html><head><meta charset=\"utf-8\">")
+                .append("<title>Большая страница для замера</title>")
+                .append("<style>p { margin: 0 }</style></head><body>");
+        String media = "<img src=\"picture.png\"><video src=\"clip.mp4\"></video>";
+        if ("early".equals(this.media)) {
+            sb.append(media);
+        }
+        String paragraph = "<p class=\"text\">Lorem ipsum dolor sit amet, <a href=\"/x\">ссылка</a>, "
+                + "consectetur adipiscing elit.</p>\n";
+        while (sb.length() < pageKb * 1024) {
+            sb.append(paragraph);
+        }
+        if ("late".equals(this.media)) {
+            sb.append(media);
+        }
+        page = sb.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void jsoupDom(Blackhole bh) {
+        // так работал handleText: BodyHandlers.ofString() и полный разбор в DOM
+        Document doc = Jsoup.parse(new String(page, StandardCharsets.UTF_8));
+        bh.consume(doc.title());
+        bh.consume(!doc.getElementsByTag("img").isEmpty());
+        bh.consume(!doc.getElementsByTag("video").isEmpty());
+    }
+
+    @Benchmark
+    public void streamingScanner(Blackhole bh) {
+        HtmlHeadBodySubscriber subscriber = new HtmlHeadBodySubscriber(StandardCharsets.UTF_8, Long.MAX_VALUE);
+        boolean[] cancelled = {false};
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled[0] = true;
+            }
+        });
+        for (int from = 0; from < page.length && !cancelled[0]; from += CHUNK_SIZE) {
+            subscriber.onNext(List.of(ByteBuffer.wrap(page, from, Math.min(CHUNK_SIZE, page.length - from))));
+        }
+        subscriber.onComplete();
+        HtmlHeadScanner head = subscriber.getBody().toCompletableFuture().join();
+        bh.consume(head.getTitle());
+        bh.consume(head.isHasImage());
+        bh.consume(head.isHasVideo());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HtmlParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
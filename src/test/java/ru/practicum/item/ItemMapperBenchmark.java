@@ -0,0 +1,88 @@
+package ru.practicum.item;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.practicum.user.User;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+/**
+ * Стоимость преобразования элементов в DTO: цикл в {@link ItemMapper}, прежний вариант
+ * с параллельным потоком и вариант с тэгами, загруженными отдельным запросом.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemMapperBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private List<Item> items;
+    private Map<Long, Set<String>> tagsByItemId;
+
+    @Setup
+    public void setUp() {
+        User user = new User();
+        user.setId(1L);
+        items = new ArrayList<>(size);
+        tagsByItemId = new HashMap<>();
+        for (long i = 0; i < size; i++) {
+            ResolvedUrl resolvedUrl = new ResolvedUrl();
+            resolvedUrl.setId(i);
+            resolvedUrl.setUrl("https://www.example.com/articles/" + i);
+            resolvedUrl.setMimeType("text");
+            resolvedUrl.setTitle("Article " + i);
+            resolvedUrl.setHasImage(i % 2 == 0);
+
+            Item item = new Item();
+            item.setId(i);
+            item.setUser(user);
+            item.setUrl("https://example.com/articles/" + i);
+            item.setResolvedUrl(resolvedUrl);
+            item.setDateResolved(Instant.now());
+            item.setState(ItemState.RESOLVED);
+            item.setTags(Set.of("java", "tag" + i % 10));
+            items.add(item);
+            tagsByItemId.put(i, item.getTags());
+        }
+    }
+
+    @Benchmark
+    public List<ItemDto> loop() {
+        return ItemMapper.mapToItemDto(items);
+    }
+
+    @Benchmark
+    public List<ItemDto> parallelStream() {
+        // так mapToItemDto(Iterable) был написан раньше
+        return StreamSupport.stream(items.spliterator(), true)
+                .map(ItemMapper::mapToItemDto)
+                .toList();
+    }
+
+    @Benchmark
+    public List<ItemDto> loopWithTagsMap() {
+        return ItemMapper.mapToItemDto(items, tagsByItemId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ItemMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
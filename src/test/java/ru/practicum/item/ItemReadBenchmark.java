@@ -0,0 +1,147 @@
+package ru.practicum.item;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.LaterApplication;
+import ru.practicum.user.User;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.UserState;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение всех элементов пользователя в DTO в транзакции readOnly, на встроенной базе H2, мимо кэша списков:
+ * entities - как раньше, через сущности Item с метаданными (left join fetch) и ItemMapper;
+ * projections - через проекцию ItemView (select new), как сейчас в ItemServiceImpl.
+ * Тэги в обоих случаях загружаются одним запросом. Запускать с GCProfiler: gc.alloc.rate.norm - байт на вызов;
+ * счётчик managed - число сущностей в контексте постоянства перед завершением транзакции.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemReadBenchmark {
+    @Param({"10000"})
+    private int itemCount;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate readOnly;
+    private ItemRepository itemRepository;
+    private EntityManager entityManager;
+    private long userId;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PersistenceContext {
+        public long managed;
+    }
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(LaterApplication.class)
+                .run("--spring.main.web-application-type=none",
+                        "--spring.datasource.url=jdbc:h2:mem:later-read;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.root=WARN");
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        itemRepository = context.getBean(ItemRepository.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(
+                context.getBean(EntityManagerFactory.class));
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        ResolvedUrlRepository urlRepository = context.getBean(ResolvedUrlRepository.class);
+
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status -> {
+            User user = new User();
+            user.setEmail("benchmark@later");
+            user.setFirstName("Bench");
+            user.setState(UserState.ACTIVE);
+            user = userRepository.save(user);
+            List<Item> items = new ArrayList<>(itemCount);
+            Instant now = Instant.now();
+            for (int i = 0; i < itemCount; i++) {
+                ResolvedUrl resolvedUrl = new ResolvedUrl();
+                resolvedUrl.setCanonicalUrl("https://example.com/articles/" + i);
+                resolvedUrl.setUrl("https://www.example.com/articles/" + i);
+                resolvedUrl.setMimeType("text");
+                resolvedUrl.setTitle("Article " + i);
+                resolvedUrl.setHasImage(i % 2 == 0);
+                resolvedUrl.setDateResolved(now.minusSeconds(i));
+
+                Item item = new Item();
+                item.setUser(user);
+                item.setUrl("https://example.com/articles/" + i);
+                item.setResolvedUrl(urlRepository.save(resolvedUrl));
+                item.setDateResolved(now.minusSeconds(i));
+                item.setState(ItemState.RESOLVED);
+                item.setTags(Set.of("java", "tag" + i % 10));
+                items.add(item);
+            }
+            itemRepository.saveAll(items);
+            userId = user.getId();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ItemDto> entities(PersistenceContext counter) {
+        return readOnly.execute(status -> {
+            List<Item> items = entityManager.createQuery("select i from Item as i " +
+                            "left join fetch i.resolvedUrl " +
+                            "where i.user.id = :userId", Item.class)
+                    .setParameter("userId", userId)
+                    .getResultList();
+            List<ItemDto> dtos = ItemMapper.mapToItemDto(items,
+                    ItemMapper.groupTags(itemRepository.findTagsByUserId(userId)));
+            counter.managed = managedEntities();
+            return dtos;
+        });
+    }
+
+    @Benchmark
+    public List<ItemDto> projections(PersistenceContext counter) {
+        return readOnly.execute(status -> {
+            List<ItemDto> dtos = ItemMapper.mapToItemDto(itemRepository.findViewsByUserId(userId),
+                    ItemMapper.groupTags(itemRepository.findTagsByUserId(userId)));
+            counter.managed = managedEntities();
+            return dtos;
+        });
+    }
+
+    private long managedEntities() {
+        return entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ItemReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
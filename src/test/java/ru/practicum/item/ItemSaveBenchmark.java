@@ -0,0 +1,170 @@
+package ru.practicum.item;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.LaterApplication;
+import ru.practicum.note.ItemNote;
+import ru.practicum.user.User;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.UserState;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Число операторов JDBC (и время) на сохранение элемента с TAGS тэгами и NOTES заметками
+ * и на замену двух тэгов из TAGS, на встроенной базе H2.
+ * batching=off - как было с IDENTITY: каждая строка вставляется своим оператором;
+ * tagUpdate=replace - как было при замене коллекции тэгов целиком: все строки tags удаляются и вставляются заново.
+ * Число операторов последнего вызова выводится как счётчик statements рядом со временем.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemSaveBenchmark {
+    private static final int TAGS = 20;
+    private static final int NOTES = 5;
+
+    @Param({"off", "on"})
+    private String batching;
+
+    @Param({"replace", "diff"})
+    private String tagUpdate;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private ItemRepository itemRepository;
+    private EntityManager entityManager;
+    private Statistics statistics;
+    private User user;
+    private long itemId;
+    private final Set<String> tagsA = tags("a");
+    private final Set<String> tagsB = tags("b");
+    private boolean useB;
+    private long saved;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Statements {
+        public long statements;
+    }
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(LaterApplication.class)
+                .run("--spring.main.web-application-type=none",
+                        "--spring.datasource.url=jdbc:h2:mem:later-save;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + (batching.equals("on") ? 50 : 1),
+                        "--logging.level.root=WARN");
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        itemRepository = context.getBean(ItemRepository.class);
+        EntityManagerFactory entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            User newUser = new User();
+            newUser.setEmail("benchmark@later");
+            newUser.setFirstName("Bench");
+            newUser.setState(UserState.ACTIVE);
+            user = userRepository.save(newUser);
+            Item item = newItem();
+            item.setTags(tagsA);
+            itemId = itemRepository.save(item).getId();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Item saveItemWithNotes(Statements counter) {
+        statistics.clear();
+        Item item = transactionTemplate.execute(status -> {
+            Item newItem = newItem();
+            newItem.setTags(tagsA);
+            newItem = itemRepository.save(newItem);
+            for (int i = 0; i < NOTES; i++) {
+                ItemNote note = new ItemNote();
+                note.setItem(newItem);
+                note.setUserId(newItem.getUser().getId());
+                note.setText("Note " + i);
+                entityManager.persist(note);
+            }
+            return newItem;
+        });
+        counter.statements = statistics.getPrepareStatementCount();
+        return item;
+    }
+
+    @Benchmark
+    public Item replaceTwoTags(Statements counter) {
+        // наборы a и b отличаются двумя тэгами: каждый вызов меняет два тэга из TAGS
+        Set<String> next = useB ? tagsB : tagsA;
+        useB = !useB;
+        statistics.clear();
+        Item item = transactionTemplate.execute(status -> {
+            Item existing = itemRepository.findById(itemId).orElseThrow();
+            if (tagUpdate.equals("replace")) {
+                ReflectionTestUtils.setField(existing, "tags", new HashSet<>(next));
+            } else {
+                existing.setTags(next);
+            }
+            return existing;
+        });
+        counter.statements = statistics.getPrepareStatementCount();
+        return item;
+    }
+
+    private Item newItem() {
+        Item item = new Item();
+        item.setUser(user);
+        item.setUrl("https://example.com/articles/" + saved++);
+        item.setDateResolved(Instant.now());
+        item.setState(ItemState.PENDING);
+        return item;
+    }
+
+    private static Set<String> tags(String variant) {
+        Set<String> tags = IntStream.range(2, TAGS)
+                .mapToObj(i -> "tag" + i)
+                .collect(Collectors.toCollection(HashSet::new));
+        tags.add("first-" + variant);
+        tags.add("second-" + variant);
+        return tags;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ItemSaveBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,155 @@
+package ru.practicum.item;
+
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.LaterApplication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Нагрузочный тест POST /items при медленных сайтах: приложение запускается дважды - на потоках платформы
+ * (пул Tomcat из TOMCAT_THREADS потоков) и на виртуальных потоках, - и получает одинаковую нагрузку
+ * из CLIENTS одновременных клиентов. Каждый сайт отвечает через UPSTREAM_DELAY.
+ * Запускается отдельно: mvn -Pload-test test (нужна база laterTest).
+ */
+@Slf4j
+@Tag("load")
+class ItemSaveLoadTest {
+    private static final Duration UPSTREAM_DELAY = Duration.ofMillis(200);
+    private static final int TOMCAT_THREADS = 50;
+    private static final int CLIENTS = 400;
+    private static final int REQUESTS = 4000;
+
+    private HttpServer upstream;
+    private ExecutorService upstreamExecutor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        byte[] page = "<html><head><title>Slow page</title></head><body></body></html>"
+                .getBytes(StandardCharsets.UTF_8);
+        upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CLIENTS);
+        upstream.createContext("/", exchange -> {
+            try {
+                Thread.sleep(UPSTREAM_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+        });
+        // сам сайт не должен быть узким местом
+        upstreamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        upstream.setExecutor(upstreamExecutor);
+        upstream.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.stop(0);
+        upstreamExecutor.shutdownNow();
+    }
+
+    @Test
+    void testVirtualThreadsSaveFasterUnderSlowHosts() throws Exception {
+        double platform = measure(false);
+        double virtual = measure(true);
+        String report = String.format("POST /items, upstream delay %d ms, %d clients: platform threads %.1f req/s, "
+                + "virtual threads %.1f req/s", UPSTREAM_DELAY.toMillis(), CLIENTS, platform, virtual);
+        log.info(report);
+
+        assertThat(report, virtual, greaterThanOrEqualTo(platform));
+    }
+
+    /**
+     * Запускает приложение, отправляет REQUESTS сохранений с уникальными адресами и возвращает запросов в секунду.
+     */
+    private double measure(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LaterApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:postgresql://localhost:5432/laterTest",
+                        "spring.datasource.username=testUser",
+                        "spring.datasource.password=testpass",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "http-log.level=OFF",
+                        // все запросы идут на один хост: ограничения хоста не должны мешать измерению
+                        "url-fetcher.per-host.concurrency=" + CLIENTS,
+                        "url-fetcher.per-host.requests-per-sec=100000",
+                        "web.max-concurrent-requests=" + CLIENTS)
+                .run()) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            String suffix = UUID.randomUUID().toString();
+            long userId = jdbcTemplate.queryForObject("INSERT INTO users (email, first_name, state, registration_date) "
+                    + "VALUES (?, 'Иван', 'ACTIVE', now()) RETURNING id", Long.class, "load-" + suffix + "@email.com");
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            try {
+                return send(port, userId, suffix);
+            } finally {
+                jdbcTemplate.update("DELETE FROM tags WHERE item_id IN (SELECT id FROM items WHERE user_id = ?)", userId);
+                jdbcTemplate.update("DELETE FROM items WHERE user_id = ?", userId);
+                jdbcTemplate.update("DELETE FROM urls WHERE resolved_url LIKE ?", upstreamUrl("/" + suffix) + "%");
+                jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+            }
+        }
+    }
+
+    private double send(int port, long userId, String suffix) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try (HttpClient client = HttpClient.newBuilder().executor(clients).build()) {
+            URI items = URI.create("http://localhost:" + port + "/items");
+            List<Future<Integer>> responses = new ArrayList<>(REQUESTS);
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                HttpRequest request = HttpRequest.newBuilder(items)
+                        .header("Content-Type", "application/json")
+                        .header("X-Later-User-Id", String.valueOf(userId))
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"url\":\"" + upstreamUrl("/" + suffix + "/" + i) + "\"}"))
+                        .build();
+                responses.add(clients.submit(() ->
+                        client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()));
+            }
+            for (Future<Integer> response : responses) {
+                assertThat(response.get(5, TimeUnit.MINUTES), equalTo(200));
+            }
+            return REQUESTS / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private String upstreamUrl(String path) {
+        return "http://127.0.0.1:" + upstream.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,126 @@
+package ru.practicum.item;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.LaterApplication;
+import ru.practicum.common.KeysetPage;
+import ru.practicum.user.User;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.UserState;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение элементов через {@link ItemService} на встроенной базе H2: весь список пользователя,
+ * первая страница по ключу и один элемент. Схема создаётся Hibernate по сущностям,
+ * поэтому здесь не участвуют запросы, которым нужны таблицы из schema.sql (фильтр по тэгам).
+ * cached=false отключает кэш списков (item-cache.maximum-size=0): каждый вызов getItems идёт в базу;
+ * при cached=true весь список после первого вызова отдаётся из кэша.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemServiceBenchmark {
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"100", "10000"})
+    private int itemCount;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private ConfigurableApplicationContext context;
+    private ItemService service;
+    private long userId;
+    private long itemId;
+
+    @Setup
+    public void setUp() {
+        // аргументы командной строки важнее application.properties
+        context = new SpringApplicationBuilder(LaterApplication.class)
+                .run("--spring.main.web-application-type=none",
+                        "--spring.datasource.url=jdbc:h2:mem:later;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--item-cache.maximum-size=" + (cached ? 10000 : 0),
+                        "--logging.level.root=WARN");
+        service = context.getBean(ItemService.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        ResolvedUrlRepository urlRepository = context.getBean(ResolvedUrlRepository.class);
+
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status -> {
+            User user = new User();
+            user.setEmail("benchmark@later");
+            user.setFirstName("Bench");
+            user.setState(UserState.ACTIVE);
+            user = userRepository.save(user);
+            List<Item> items = new ArrayList<>(itemCount);
+            Instant now = Instant.now();
+            for (int i = 0; i < itemCount; i++) {
+                ResolvedUrl resolvedUrl = new ResolvedUrl();
+                resolvedUrl.setCanonicalUrl("https://example.com/articles/" + i);
+                resolvedUrl.setUrl("https://www.example.com/articles/" + i);
+                resolvedUrl.setMimeType("text");
+                resolvedUrl.setTitle("Article " + i);
+                resolvedUrl.setDateResolved(now.minusSeconds(i));
+
+                Item item = new Item();
+                item.setUser(user);
+                item.setUrl("https://example.com/articles/" + i);
+                item.setResolvedUrl(urlRepository.save(resolvedUrl));
+                item.setDateResolved(now.minusSeconds(i));
+                item.setState(ItemState.RESOLVED);
+                item.setTags(Set.of("java", "tag" + i % 10));
+                items.add(item);
+            }
+            items = itemRepository.saveAll(items);
+            userId = user.getId();
+            itemId = items.get(itemCount / 2).getId();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ItemDto> getItems() {
+        return service.getItems(userId);
+    }
+
+    @Benchmark
+    public KeysetPage<ItemDto> getFirstPage() {
+        return service.getItems(userId, null, TagMatchMode.ANY, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ItemDto getItem() {
+        return service.getItem(userId, itemId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ItemServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.practicum.item;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.user.User;
+import ru.practicum.user.UserCache;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.UserState;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({ItemServiceImpl.class, ItemTagIndex.class, ResolvedUrlStore.class, UrlCanonicalizer.class, ItemReadCache.class,
+        UserCache.class, SimpleMeterRegistry.class})
+
+// каждое сохранение должно идти в своей транзакции, как в приложении
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {"spring.datasource.url=jdbc:postgresql://localhost:5432/laterTest"
+        , "spring.datasource.username=testUser"
+        , "spring.datasource.password=testpass"})
+
+@DataJpaTest
+class ItemServiceConcurrencyTest {
+    private static final int SAVES = 300;
+    private static final int USERS = 3;
+    private static final int TAGS = 5;
+
+    private final ItemServiceImpl service;
+
+    private final UserRepository userRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private UrlMetadataRetriever retriever;
+
+    @MockBean
+    private AsyncItemResolver asyncResolver;
+
+    private final List<User> users = new ArrayList<>();
+
+    private String resolvedUrl;
+
+    @BeforeEach
+    void setUp() {
+        // адрес уникален для каждого запуска, чтобы не зависеть от данных в тестовой базе
+        String suffix = UUID.randomUUID().toString();
+        resolvedUrl = "https://example.com/concurrent/" + suffix;
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail("concurrent" + i + "-" + suffix + "@email.com");
+            user.setFirstName("Иван");
+            user.setState(UserState.ACTIVE);
+            users.add(userRepository.save(user));
+        }
+        when(retriever.retrieve(anyString())).thenAnswer(invocation -> UrlMetadataRetrieverImpl.UrlMetadataImpl.builder()
+                .normalUrl(invocation.getArgument(0))
+                .resolvedUrl(resolvedUrl)
+                .mimeType("text")
+                .title("Concurrent")
+                .dateResolved(Instant.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (User user : users) {
+            jdbcTemplate.update("DELETE FROM tags WHERE item_id IN (SELECT id FROM items WHERE user_id = ?)",
+                    user.getId());
+            jdbcTemplate.update("DELETE FROM items WHERE user_id = ?", user.getId());
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", user.getId());
+        }
+        jdbcTemplate.update("DELETE FROM urls WHERE resolved_url = ?", resolvedUrl);
+    }
+
+    @Test
+    void testConcurrentSavesOfSameUrl() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ItemDto>> saves = new ArrayList<>();
+        for (int i = 0; i < SAVES; i++) {
+            long userId = users.get(i % USERS).getId();
+            ItemDto itemDto = new ItemDto();
+            // разные исходные адреса ведут на одну страницу
+            itemDto.setUrl("https://example.com/concurrent?from=" + i);
+            itemDto.setTags(Set.of("tag" + i % TAGS));
+            saves.add(executor.submit(() -> {
+                start.await();
+                return service.addNewItem(userId, itemDto);
+            }));
+        }
+        start.countDown();
+
+        Map<Long, Set<Long>> itemIdsByUser = new HashMap<>();
+        for (Future<ItemDto> save : saves) {
+            // ни одно сохранение не должно упасть на нарушении уникальности
+            ItemDto saved = save.get(2, TimeUnit.MINUTES);
+            itemIdsByUser.computeIfAbsent(saved.getUserId(), id -> new HashSet<>()).add(saved.getId());
+        }
+        executor.shutdown();
+
+        assertThat(itemIdsByUser.keySet(), hasSize(USERS));
+        assertThat(itemIdsByUser.values(), everyItem(hasSize(1)));
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM urls WHERE resolved_url = ?",
+                Long.class, resolvedUrl), equalTo(1L));
+        for (User user : users) {
+            assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM items WHERE user_id = ?",
+                    Long.class, user.getId()), equalTo(1L));
+            // тэги всех сохранений пользователя собраны в одном элементе
+            assertThat(jdbcTemplate.queryForList("SELECT DISTINCT t.name FROM tags AS t "
+                            + "JOIN items AS i ON i.id = t.item_id WHERE i.user_id = ?", String.class, user.getId()),
+                    containsInAnyOrder("tag0", "tag1", "tag2", "tag3", "tag4"));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ru.practicum.item;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.user.User;
+import ru.practicum.user.UserCache;
+import ru.practicum.user.UserState;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({ItemServiceImpl.class, ItemTagIndex.class, ResolvedUrlStore.class, UrlCanonicalizer.class, ItemReadCache.class,
+        UserCache.class, SimpleMeterRegistry.class})
+
+@Transactional
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {"spring.datasource.url=jdbc:postgresql://localhost:5432/laterTest"
+        , "spring.datasource.username=testUser"
+        , "spring.datasource.password=testpass"
+        , "spring.jpa.properties.hibernate.generate_statistics=true"})
+
+@DataJpaTest
+class ItemServiceImplTest {
+    private static final int ITEM_COUNT = 20;
+
+    private final EntityManager em;
+
+    private final ItemServiceImpl service;
+
+    private final ItemTagIndex tagIndex;
+
+    private final ResolvedUrlStore urlStore;
+
+    @MockBean
+    private UrlMetadataRetriever retriever;
+
+    @MockBean
+    private AsyncItemResolver asyncResolver;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setEmail("items@email.com");
+        user.setFirstName("Иван");
+        user.setState(UserState.ACTIVE);
+        em.persist(user);
+
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            ResolvedUrl resolvedUrl = new ResolvedUrl();
+            resolvedUrl.setCanonicalUrl("https://example.com/page" + i);
+            resolvedUrl.setUrl("https://example.com/page" + i);
+            resolvedUrl.setTitle("Page " + i);
+            resolvedUrl.setDateResolved(Instant.now());
+            em.persist(resolvedUrl);
+
+            Item item = new Item();
+            item.setUser(user);
+            item.setUrl("https://example.com/page" + i);
+            item.setResolvedUrl(resolvedUrl);
+            item.setDateResolved(Instant.now());
+            item.setState(ItemState.RESOLVED);
+            item.setTags(Set.of("tag" + i % 2, "common", "n" + i));
+            em.persist(item);
+            tagIndex.reindex(user.getId(), item.getId(), item.getTags());
+        }
+        em.flush();
+        // элементы должны загружаться из базы, а не из контекста постоянства
+        em.clear();
+    }
+
+    @Test
+    void testGetItemsUsesFixedNumberOfStatements() {
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        List<ItemDto> items = service.getItems(user.getId());
+
+        assertThat(items, hasSize(ITEM_COUNT));
+        assertThat(items, everyItem(hasProperty("tags", hasItem("common"))));
+        // элементы и тэги, независимо от количества элементов
+        assertThat(statistics.getPrepareStatementCount(), equalTo(2L));
+    }
+
+    @Test
+    void testReadsDoNotLoadEntities() {
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        service.getItems(user.getId());
+        service.getItems(user.getId(), null, TagMatchMode.ANY, null, ITEM_COUNT / 2);
+
+        // элементы выбираются проекцией и не попадают в контекст постоянства
+        assertThat(statistics.getEntityLoadCount(), equalTo(0L));
+    }
+
+    @Test
+    void testGetItemsByTagsUsesFixedNumberOfStatements() {
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        List<ItemDto> items = service.getItems(user.getId(), Set.of("tag0"), TagMatchMode.ANY);
+
+        assertThat(items, hasSize(ITEM_COUNT / 2));
+        assertThat(items, everyItem(hasProperty("tags", hasItems("tag0", "common"))));
+        // id по индексу тэгов, элементы и их тэги, независимо от количества элементов
+        assertThat(statistics.getPrepareStatementCount(), equalTo(3L));
+    }
+
+    @Test
+    void testRepeatedGetItemsIsServedFromCache() {
+        service.getItems(user.getId());
+        service.getItems(user.getId(), Set.of("tag0"), TagMatchMode.ANY);
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        List<ItemDto> items = service.getItems(user.getId());
+        List<ItemDto> byTag = service.getItems(user.getId(), Set.of("tag0"), TagMatchMode.ANY);
+
+        assertThat(items, hasSize(ITEM_COUNT));
+        assertThat(byTag, hasSize(ITEM_COUNT / 2));
+        assertThat(statistics.getPrepareStatementCount(), equalTo(0L));
+    }
+
+    @Test
+    void testGetItemsByAllTags() {
+        List<ItemDto> anyOf = service.getItems(user.getId(), Set.of("tag0", "n1"), TagMatchMode.ANY);
+        List<ItemDto> allOf = service.getItems(user.getId(), Set.of("tag0", "n2"), TagMatchMode.ALL);
+
+        assertThat(anyOf, hasSize(ITEM_COUNT / 2 + 1));
+        assertThat(allOf, hasSize(1));
+        assertThat(allOf.getFirst().getTags(), hasItems("tag0", "n2"));
+    }
+
+    @Test
+    void testItemWithoutUrlIsRejected() {
+        ItemDto itemDto = new ItemDto();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.addNewItem(user.getId(), itemDto));
+        assertThat(e.getStatusCode().value(), equalTo(400));
+    }
+
+    @Test
+    void testMovedItemMergesIntoExistingOne() {
+        long fromUrlId = urlId("https://example.com/page1");
+        long toUrlId = urlId("https://example.com/page0");
+
+        // у пользователя уже есть элемент с новой страницей: повтор сливается в него
+        urlStore.moveItems(fromUrlId, toUrlId);
+        em.clear();
+
+        List<ItemDto> items = service.getItems(user.getId());
+        assertThat(items, hasSize(ITEM_COUNT - 1));
+        List<ItemDto> merged = service.getItems(user.getId(), Set.of("n1"), TagMatchMode.ANY);
+        assertThat(merged, hasSize(1));
+        assertThat(merged.getFirst().getTags(), containsInAnyOrder("tag0", "tag1", "common", "n0", "n1"));
+    }
+
+    private long urlId(String canonicalUrl) {
+        return urlStore.findByCanonicalUrl(canonicalUrl).orElseThrow().id();
+    }
+
+    private Statistics statistics() {
+        return em.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+    }
+}
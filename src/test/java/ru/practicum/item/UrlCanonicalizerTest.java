@@ -0,0 +1,70 @@
+package ru.practicum.item;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(new SimpleMeterRegistry(),
+            List.of("utm_*", "fbclid"), true, true, true, 1000, 1);
+
+    @Test
+    void testVariantsOfSamePageHaveSameKey() {
+        String canonical = "https://example.com/articles/java?id=7&page=2";
+        List<String> variants = List.of(
+                "https://example.com/articles/java?id=7&page=2",
+                "HTTPS://WWW.Example.com:443/articles/java/?page=2&id=7",
+                "https://example.com/articles/java?utm_source=mail&id=7&UTM_Medium=x&page=2#comments",
+                "https://www.example.com/articles/java//?id=7&fbclid=abc&page=2"
+        );
+        for (String variant : variants) {
+            assertThat(variant, canonicalizer.canonicalize(variant), equalTo(canonical));
+        }
+    }
+
+    @Test
+    void testMeaningfulPartsAreKept() {
+        // регистр пути, значения параметров и их повторы различают страницы
+        assertThat(canonicalizer.canonicalize("http://example.com:8080/Path?b=2&a=1&a=0"),
+                equalTo("http://example.com:8080/Path?a=1&a=0&b=2"));
+        assertThat(canonicalizer.canonicalize("https://www.com/"), equalTo("https://www.com/"));
+        assertThat(canonicalizer.canonicalize("https://example.com?utm_source=x"), equalTo("https://example.com/"));
+        assertThat(canonicalizer.canonicalize("not a url"), equalTo("not a url"));
+    }
+
+    @Test
+    void testKnownRedirectResolvesWithoutFetch() {
+        assertThat(canonicalizer.canonicalKey("https://bit.ly/abc"), equalTo("https://bit.ly/abc"));
+
+        canonicalizer.remember(metadata("https://bit.ly/abc", "https://www.example.com/long/path/?utm_source=bitly"));
+        canonicalizer.remember(metadata("https://t.co/xyz", "https://bit.ly/abc"));
+
+        assertThat(canonicalizer.canonicalKey("https://bit.ly/abc"), equalTo("https://example.com/long/path"));
+        assertThat(canonicalizer.canonicalKey("http://BIT.LY/abc#x"), equalTo("http://bit.ly/abc"));
+        // цепочка из двух запомненных перенаправлений
+        assertThat(canonicalizer.canonicalKey("https://t.co/xyz"), equalTo("https://example.com/long/path"));
+    }
+
+    @Test
+    void testRedirectLoopIsBounded() {
+        canonicalizer.remember(metadata("https://a.example.com/", "https://b.example.com/"));
+        canonicalizer.remember(metadata("https://b.example.com/", "https://a.example.com/"));
+
+        // по карте не больше MAX_HOPS переходов
+        canonicalizer.canonicalKey("https://a.example.com/");
+    }
+
+    private static UrlMetadataRetriever.UrlMetadata metadata(String normalUrl, String resolvedUrl) {
+        return UrlMetadataRetrieverImpl.UrlMetadataImpl.builder()
+                .normalUrl(normalUrl)
+                .resolvedUrl(resolvedUrl)
+                .mimeType("text")
+                .dateResolved(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package ru.practicum.item;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UrlFetcherTest {
+    private final AtomicInteger unavailableRequests = new AtomicInteger();
+    private final AtomicInteger downRequests = new AtomicInteger();
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch slowReleased = new CountDownLatch(1);
+
+    private HttpServer server;
+    private UrlFetcher fetcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // первые два запроса - 503, дальше 200
+        server.createContext("/flaky", exchange -> {
+            int status = unavailableRequests.incrementAndGet() <= 2 ? 503 : 200;
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.createContext("/down", exchange -> {
+            downRequests.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        // отвечает, только когда тест его отпустит
+        server.createContext("/slow", exchange -> {
+            slowStarted.countDown();
+            try {
+                slowReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        fetcher = new UrlFetcher(new SimpleMeterRegistry(), 5, 5, 1000, 2, 5, 100, 3, 1, 10,
+                20, 10, 0.5, 10, 30, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowReleased.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void testRetriesTemporaryErrors() {
+        HttpResponse<Void> response = fetcher.send(uri("/flaky"), "GET", HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode(), equalTo(200));
+        UrlFetcher.HostStats stats = fetcher.stats().get("127.0.0.1");
+        assertThat(stats.requests(), equalTo(3L));
+        assertThat(stats.errors(), equalTo(2L));
+        assertThat(stats.retries(), equalTo(2L));
+        assertThat(stats.inFlight(), equalTo(0));
+    }
+
+    @Test
+    void testDoesNotRetryClientErrors() {
+        HttpResponse<Void> response = fetcher.send(uri("/missing"), "GET", HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode(), equalTo(404));
+        UrlFetcher.HostStats stats = fetcher.stats().get("127.0.0.1");
+        assertThat(stats.requests(), equalTo(1L));
+        assertThat(stats.retries(), equalTo(0L));
+    }
+
+    @Test
+    void testOpenBreakerFailsFast() {
+        // без повторов; предохранитель размыкается после двух ошибок из двух запросов
+        UrlFetcher fetcher = new UrlFetcher(new SimpleMeterRegistry(), 5, 5, 1000, 2, 5, 100, 1, 1, 10,
+                4, 2, 0.5, 10, 30, 1);
+        for (int i = 0; i < 2; i++) {
+            assertThat(fetcher.send(uri("/down"), "GET", HttpResponse.BodyHandlers.discarding()).statusCode(),
+                    equalTo(500));
+        }
+
+        HostUnavailableException e = assertThrows(HostUnavailableException.class,
+                () -> fetcher.send(uri("/down"), "GET", HttpResponse.BodyHandlers.discarding()));
+
+        assertThat(e.getHost(), equalTo("127.0.0.1"));
+        assertThat(downRequests.get(), equalTo(2));
+        assertThat(fetcher.stats().get("127.0.0.1").breaker(), equalTo(HostCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void testCancelAbortsRequestAndReleasesHost() throws Exception {
+        CompletableFuture<HttpResponse<Void>> slow = fetcher.sendAsync(uri("/slow"), "GET", Map.of(),
+                HttpResponse.BodyHandlers.discarding());
+        assertThat(slowStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+        assertThat(fetcher.stats().get("127.0.0.1").inFlight(), equalTo(1));
+
+        slow.cancel(true);
+
+        assertThat(slow.isCancelled(), equalTo(true));
+        // место на хосте освобождено, не дожидаясь ответа сайта
+        assertThat(fetcher.stats().get("127.0.0.1").inFlight(), equalTo(0));
+        assertThat(fetcher.send(uri("/missing"), "GET", HttpResponse.BodyHandlers.discarding()).statusCode(),
+                equalTo(404));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+}
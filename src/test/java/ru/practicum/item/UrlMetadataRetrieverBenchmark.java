@@ -0,0 +1,110 @@
+package ru.practicum.item;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь {@link UrlMetadataRetrieverImpl#retrieve(String)} без сети: страницы из src/test/resources/html
+ * отдаёт локальный HTTP-сервер, кэш метаданных отключён (maximumSize = 0),
+ * поэтому каждый вызов - это запрос, потоковый разбор и построение результата.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlMetadataRetrieverBenchmark {
+    // article - обычная статья, заголовок и img в начале; gallery - 115 КБ, video в самом конце;
+    // cover.png - картинка, тело которой не скачивается
+    @Param({"article.html", "gallery.html", "cover.png"})
+    private String fixture;
+
+    private HttpServer server;
+    private UrlMetadataRetrieverImpl retriever;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, byte[]> pages = Map.of(
+                "/article.html", readFixture("article.html"),
+                "/gallery.html", readFixture("gallery.html"),
+                "/cover.png", new byte[64 * 1024]);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = pages.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    path.endsWith(".png") ? "image/png" : "text/html; charset=utf-8");
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                } catch (IOException e) {
+                    // клиент закрыл соединение, дочитав страницу до нужного места
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // ограничение частоты запросов к хосту здесь не нужно: замеряется сам разбор
+        retriever = new UrlMetadataRetrieverImpl(registry, 1024 * 1024,
+                new UrlFetcher(registry, 10, 30, Double.MAX_VALUE, 64, 30, 1000, 1, 0, 0,
+                        20, 10, 0.5, 10, 30, 3),
+                new UrlMetadataCache(registry, 0, 1, 1),
+                new HostProbeStrategies(registry, 1000, 1),
+                new UrlCanonicalizer(registry, List.of(), true, true, true, 0, 1));
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/" + fixture;
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public UrlMetadataRetriever.UrlMetadata retrieve() {
+        return retriever.retrieve(url);
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        try (InputStream in = UrlMetadataRetrieverBenchmark.class.getResourceAsStream("/html/" + name)) {
+            if (in == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UrlMetadataRetrieverBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
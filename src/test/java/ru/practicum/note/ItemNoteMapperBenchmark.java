@@ -0,0 +1,59 @@
+package ru.practicum.note;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.practicum.item.Item;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость преобразования заметок в DTO, в основном - форматирования даты заметки.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemNoteMapperBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private List<ItemNote> notes;
+
+    @Setup
+    public void setUp() {
+        Item item = new Item();
+        item.setId(1L);
+        item.setUrl("https://example.com/articles/1");
+        Instant now = Instant.now();
+        notes = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            ItemNote note = new ItemNote();
+            note.setId(i);
+            note.setItem(item);
+            note.setText("Заметка " + i);
+            note.setDateOfNote(now.minusSeconds(i));
+            notes.add(note);
+        }
+    }
+
+    @Benchmark
+    public List<ItemNoteDto> mapToItemNoteDto() {
+        return ItemNoteMapper.mapToItemNoteDto(notes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ItemNoteMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
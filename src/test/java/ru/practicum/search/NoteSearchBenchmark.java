@@ -0,0 +1,108 @@
+package ru.practicum.search;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полнотекстовый поиск против прежних запросов с LIKE '%...%' на 1 000 000 заметок.
+ * Нужна локальная база laterTest (та же, что для тестов); данные создаются один раз и переиспользуются.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NoteSearchBenchmark {
+    private static final String BENCH_EMAIL = "search-benchmark@later";
+    private static final int ITEMS = 10_000;
+    private static final int NOTES = 1_000_000;
+
+    private JdbcTemplate jdbcTemplate;
+    private SearchRepository searchRepository;
+    private long userId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:postgresql://localhost:5432/laterTest", "testUser", "testpass");
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema.sql"));
+        }
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        searchRepository = new SearchRepository(new NamedParameterJdbcTemplate(jdbcTemplate));
+
+        Long existing = jdbcTemplate.query("SELECT id FROM users WHERE email = ?",
+                rs -> rs.next() ? rs.getLong(1) : null, BENCH_EMAIL);
+        if (existing != null) {
+            userId = existing;
+            return;
+        }
+        userId = jdbcTemplate.queryForObject("INSERT INTO users (email, first_name, state) "
+                + "VALUES (?, 'Bench', 'ACTIVE') RETURNING id", Long.class, BENCH_EMAIL);
+        jdbcTemplate.update("INSERT INTO urls (canonical_url, resolved_url, title, date_resolved) "
+                + "SELECT 'https://site' || (g % 500) || '.example.com/articles/' || g,"
+                + "       'https://site' || (g % 500) || '.example.com/articles/' || g,"
+                + "       'Article ' || g || ' about ' || (ARRAY['java','spring','postgres','kotlin','linux'])[1 + g % 5],"
+                + "       now() "
+                + "FROM generate_series(1, ?) AS g "
+                + "ON CONFLICT (canonical_url) DO NOTHING", ITEMS);
+        jdbcTemplate.update("INSERT INTO items (user_id, url, url_id, date_resolved, state) "
+                + "SELECT ?, u.resolved_url, u.id, now(), 'RESOLVED' "
+                + "FROM generate_series(1, ?) AS g "
+                + "JOIN urls AS u ON u.resolved_url = 'https://site' || (g % 500) || '.example.com/articles/' || g",
+                userId, ITEMS);
+        // редкое слово needle встречается в каждой десятитысячной заметке
+        jdbcTemplate.update("INSERT INTO item_notes (item_id, user_id, text, note_date) "
+                + "SELECT i.id, ?, 'note ' || md5(g::text) || ' ' "
+                + "       || (ARRAY['read later','important','todo','draft','reference'])[1 + g % 5]"
+                + "       || CASE WHEN g % 10000 = 0 THEN ' needle' ELSE '' END,"
+                + "       now() - (g || ' seconds')::interval "
+                + "FROM generate_series(1, ?) AS g "
+                + "JOIN (SELECT id, row_number() OVER (ORDER BY id) AS rn FROM items WHERE user_id = ?) AS i "
+                + "  ON i.rn = 1 + g % ?",
+                userId, NOTES, userId, ITEMS);
+        jdbcTemplate.execute("ANALYZE urls");
+        jdbcTemplate.execute("ANALYZE items");
+        jdbcTemplate.execute("ANALYZE item_notes");
+    }
+
+    @Benchmark
+    public void likeNotesByUrl(Blackhole bh) {
+        // запрос, который строит findAllByItemUserIdAndItemUrlContaining
+        bh.consume(jdbcTemplate.queryForList("SELECT n.id FROM item_notes AS n "
+                + "JOIN items AS i ON i.id = n.item_id "
+                + "WHERE i.user_id = ? AND i.url LIKE ? ESCAPE '\\'", userId, "%site42.example%"));
+    }
+
+    @Benchmark
+    public void likeNoteText(Blackhole bh) {
+        bh.consume(jdbcTemplate.queryForList("SELECT n.id FROM item_notes AS n "
+                + "JOIN items AS i ON i.id = n.item_id "
+                + "WHERE i.user_id = ? AND n.text LIKE ?", userId, "%needle%"));
+    }
+
+    @Benchmark
+    public void fullTextSearch(Blackhole bh) {
+        bh.consume(searchRepository.search(userId, "needle", 0, 10));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NoteSearchBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}